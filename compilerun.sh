@@ -8,7 +8,7 @@ LIBDIR=lib
 echo compile...
 rm -rf $DESTDIR
 mkdir $DESTDIR
-javac -sourcepath $SRCDIR -d $DESTDIR -cp $LIBDIR/designgridlayout-1.11.jar -source 1.8 -target 1.8 $SRCDIR/driftingdroids/ui/*.java $SRCDIR/driftingdroids/model/*.java
+javac -sourcepath $SRCDIR -d $DESTDIR -cp $LIBDIR/designgridlayout-1.11.jar -source 1.8 -target 1.8 $SRCDIR/driftingdroids/ui/*.java $SRCDIR/driftingdroids/model/*.java $SRCDIR/driftingdroids/server/*.java
 cp -rp $SRCDIR/META-INF $SRCDIR/resource $DESTDIR
 
 echo
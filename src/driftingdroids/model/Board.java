@@ -714,6 +714,8 @@ public class Board {
         }
         //goal
         newBoard.setGoal(this.rotatePosition90(this.goal.position, clockwise));
+        //isFreestyleBoard
+        newBoard.isFreestyleBoard = this.isFreestyleBoard;
         return newBoard;
     }
     
@@ -1134,6 +1136,10 @@ public class Board {
         return this.goal;
     }
     
+    public List<Goal> getGoals() {
+        return Collections.unmodifiableList(this.goals);
+    }
+    
     public Goal getGoalAt(final int position) {
         Goal result = null;
         for (Goal g : this.goals) {
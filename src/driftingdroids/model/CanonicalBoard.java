@@ -0,0 +1,214 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+
+/**
+ * This class maps a board configuration (board, robots and goal) to its canonical orientation.
+ * <p>
+ * A board and its rotations by 90, 180 and 270 degrees (<code>Board.rotate90</code>) have
+ * the same solutions, only the directions of the moves are rotated. The canonical orientation
+ * is the rotation that has the smallest key, so all four rotations of a board configuration
+ * have the same canonical key. The key is the game ID, or a digest of the game dump
+ * for freestyle boards.
+ * <p>
+ * The solutions of the canonical board are mapped back to the original board
+ * by rotating the directions of their moves.
+ */
+public final class CanonicalBoard {
+
+    private final Board board;              //the original board
+    private final Board canonicalBoard;
+    private final String canonicalKey;
+    private final int rotation;             //number of clockwise rotations from board to canonicalBoard
+
+
+
+    private CanonicalBoard(final Board board, final Board canonicalBoard, final String canonicalKey, final int rotation) {
+        this.board = board;
+        this.canonicalBoard = canonicalBoard;
+        this.canonicalKey = canonicalKey;
+        this.rotation = rotation;
+    }
+
+
+
+    /**
+     * Finds the canonical orientation of the board configuration.
+     *
+     * @param board the board, with its robots and goal
+     * @return the canonical form of the board
+     */
+    public static CanonicalBoard create(final Board board) {
+        Board bestBoard = board;
+        String bestKey = createKey(board);
+        int bestRotation = 0;
+        if (null != board.getGoal()) {
+            Board rotatedBoard = board;
+            for (int rotation = 1;  rotation < 4;  ++rotation) {
+                rotatedBoard = rotatedBoard.rotate90(true);
+                final String rotatedKey = createKey(rotatedBoard);
+                if (rotatedKey.compareTo(bestKey) < 0) {
+                    bestBoard = rotatedBoard;
+                    bestKey = rotatedKey;
+                    bestRotation = rotation;
+                }
+            }
+        }
+        return new CanonicalBoard(board, bestBoard, bestKey, bestRotation);
+    }
+
+
+
+    public Board getBoard() {
+        return this.board;
+    }
+
+    public Board getCanonicalBoard() {
+        return this.canonicalBoard;
+    }
+
+    /**
+     * @return the key of the canonical board configuration; it's equal for all rotations of the board
+     */
+    public String getKey() {
+        return this.canonicalKey;
+    }
+
+    /**
+     * @return number of clockwise rotations (0...3) from the original board to the canonical board
+     */
+    public int getRotation() {
+        return this.rotation;
+    }
+
+    /**
+     * @param direction a direction on the original board
+     * @return the same direction on the canonical board
+     */
+    public int toCanonicalDirection(final int direction) {
+        return (direction + this.rotation) & 3;
+    }
+
+    /**
+     * @param direction a direction on the canonical board
+     * @return the same direction on the original board
+     */
+    public int toOriginalDirection(final int direction) {
+        return (direction - this.rotation) & 3;
+    }
+
+
+
+    /**
+     * Maps the solutions of the canonical board back to the original board.
+     *
+     * @param canonicalSolutions solutions of the canonical board
+     * @return the same solutions (in the same order) as moves on the original board
+     */
+    public List<Solution> toOriginalSolutions(final List<Solution> canonicalSolutions) {
+        final List<Solution> result = new ArrayList<Solution>(canonicalSolutions.size());
+        for (final Solution canonicalSolution : canonicalSolutions) {
+            final List<Move> moves = canonicalSolution.getMoves();
+            final int[] robotDirections = new int[moves.size() * 2];
+            for (int i = 0;  i < moves.size();  ++i) {
+                robotDirections[i * 2] = moves.get(i).robotNumber;
+                robotDirections[i * 2 + 1] = this.toOriginalDirection(moves.get(i).direction);
+            }
+            result.add(replayMoves(this.board, robotDirections, canonicalSolution.isFinished()));
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Builds a solution by replaying the moves on the board.
+     *
+     * @param board the board, with the robots at their start positions
+     * @param robotDirections pairs of robot number and direction, one pair per move
+     * @param finish call <code>Solution.finish()</code> on the new solution
+     * @return the new solution
+     */
+    static Solution replayMoves(final Board board, final int[] robotDirections, final boolean finish) {
+        final boolean[][] walls = board.getWalls();
+        Solution result = new Solution(board);
+        int[] state = board.getRobotPositions().clone();
+        for (int step = 0;  step < robotDirections.length / 2;  ++step) {
+            final int robo = robotDirections[step * 2], dir = robotDirections[step * 2 + 1];
+            final int dirIncr = board.directionIncrement[dir];
+            int newRoboPos = state[robo];
+            while (false == walls[dir][newRoboPos]) {       //move the robot until it reaches a wall or another robot.
+                newRoboPos += dirIncr;
+                if (true == isRobotPos(state, newRoboPos)) {
+                    newRoboPos -= dirIncr;
+                    break;
+                }
+            }
+            final int[] newState = state.clone();
+            newState[robo] = newRoboPos;
+            result.add(new Move(board, state, newState, step));
+            state = newState;
+        }
+        if (true == finish) {
+            result = result.finish();
+        }
+        return result;
+    }
+
+    private static boolean isRobotPos(final int[] state, final int position) {
+        for (final int pos : state) {
+            if (position == pos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Creates the key of a board configuration in its current orientation.
+     *
+     * @param board the board, with its robots and goal
+     * @return the game ID, or a digest of the game dump for freestyle boards
+     */
+    public static String createKey(final Board board) {
+        return (true == board.isFreestyleBoard() ? "dump:" + digest(board.getGameDump()) : board.getGameID());
+    }
+
+    private static String digest(final String str) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(str.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder();
+            for (final byte b : hash) {
+                sb.append(String.format("%02x", Integer.valueOf(0xff & b)));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
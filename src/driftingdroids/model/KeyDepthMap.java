@@ -72,4 +72,20 @@ public interface KeyDepthMap {
      */
     public long allocatedBytes();
 
+    /**
+     * Returns the number of bytes that this map will allocate when it needs more memory the next time
+     * (the next chunk of a trie, or the doubled table of a hash map). A caller can compare
+     * <code>allocatedBytes() + nextAllocationBytes()</code> to a memory limit before the limit is exceeded.
+     *
+     * @return number of bytes of the next allocation (approximate), or 0 if this map doesn't grow
+     */
+    public long nextAllocationBytes();
+
+    /**
+     * Releases the memory of this map's internal data structures.
+     * The map must not be used afterwards. Some implementations give their arrays
+     * to a pool for the next map, others leave the memory to the garbage collector.
+     */
+    public void release();
+
 }
@@ -0,0 +1,166 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> of fixed size, which forgets entries when it's full.
+ * <p>
+ * It's a set-associative hash table: each key is hashed to a bucket of <code>BUCKET_SIZE</code>
+ * slots. If all slots of the bucket are used, then the new entry replaces the entry with the
+ * smallest value, unless all values in the bucket are greater than the new value; in this case
+ * the new entry is dropped. The IDDFS solver stores the remaining search depth as value,
+ * so the states that were found closer to the start of the search are kept.
+ * <p>
+ * The complete key is stored, so <code>putIfGreater</code> never returns a wrong false.
+ * A forgotten entry makes it return true, which means that the solver searches the same
+ * branch again. The search still finds the shortest solutions, it only takes more time.
+ * <p>
+ * Like in <code>KeyDepthMapTrieSpecial</code>, the value 0 marks an unused slot,
+ * so the values put into this map should be in the range 1...255.
+ */
+public final class KeyDepthMapBounded implements KeyDepthMap {
+
+    private static final int BUCKET_SHIFT = 2;
+    private static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+    private static final int BYTES_PER_SLOT = 8 + 1;
+
+    private final long[] keys;
+    private final byte[] values;
+    private final int bucketMask;
+    private final int putThreshold;     //1 = putIfGreater,  0 = putIfGreaterOrEqual (USE_SLOW_SEARCH_MORE_SOLUTIONS)
+
+    private int size = 0;
+    private long numReplaced = 0, numDropped = 0;
+
+
+
+    /**
+     * Constructs an empty map that doesn't allocate more than the specified number of bytes.
+     *
+     * @param maxBytes the maximum number of bytes of the internal data structures
+     */
+    public KeyDepthMapBounded(final long maxBytes) {
+        final long maxBuckets = Math.max(1, maxBytes / (BUCKET_SIZE * BYTES_PER_SLOT));
+        final int numBuckets = Integer.highestOneBit((int)Math.min(maxBuckets, 1 << (30 - BUCKET_SHIFT)));
+        this.keys = new long[numBuckets << BUCKET_SHIFT];
+        this.values = new byte[numBuckets << BUCKET_SHIFT];
+        this.bucketMask = numBuckets - 1;
+        this.putThreshold = (Solver.USE_SLOW_SEARCH_MORE_SOLUTIONS ? 0 : 1);
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(0xffffffffL & key, byteValue);
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        hash ^= (hash >>> 29);
+        final int first = ((int)hash & this.bucketMask) << BUCKET_SHIFT;
+        int minSlot = first, minValue = Integer.MAX_VALUE;
+        for (int slot = first;  slot < first + BUCKET_SIZE;  ++slot) {
+            final int prevValue = 0xff & this.values[slot];
+            if (0 == prevValue) {   //unused slot: the key is not in the bucket
+                this.keys[slot] = key;
+                this.values[slot] = (byte)byteValue;
+                ++this.size;
+                return true;
+            }
+            if (key == this.keys[slot]) {
+                if (byteValue >= prevValue + this.putThreshold) {
+                    this.values[slot] = (byte)byteValue;
+                    return true;
+                }
+                return false;
+            }
+            if (prevValue < minValue) {
+                minValue = prevValue;
+                minSlot = slot;
+            }
+        }
+        //the bucket is full
+        if (byteValue >= minValue) {
+            this.keys[minSlot] = key;
+            this.values[minSlot] = (byte)byteValue;
+            ++this.numReplaced;
+        } else {
+            ++this.numDropped;
+        }
+        return true;
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return this.keys.length * 8L + this.values.length;
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public long nextAllocationBytes() {
+        return 0;   //the table has a fixed size
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        //nothing to do: the memory is freed by the garbage collector
+    }
+
+    /**
+     * @return number of entries that have been replaced by other entries
+     */
+    public long getNumReplaced() {
+        return this.numReplaced;
+    }
+
+    /**
+     * @return number of entries that have not been stored because their bucket was full
+     */
+    public long getNumDropped() {
+        return this.numDropped;
+    }
+
+}
@@ -0,0 +1,163 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+
+
+/**
+ * This class is a pool of the large <code>int[]</code> and <code>byte[]</code> chunks
+ * that are used by <code>KeyDepthMapTrieSpecial</code>.
+ * <p>
+ * When a search has finished, the map clears the parts of its chunks that it has used
+ * and gives them back to the pool (see <code>KeyDepthMap.release()</code>). The next map
+ * takes its chunks from the pool instead of allocating new ones. So a batch of many
+ * consecutive searches allocates the chunks only once.
+ * <p>
+ * All chunks in the pool are filled with zeros. The pool keeps them by soft references,
+ * so the garbage collector can still free them if the memory is needed for other things.
+ * <p>
+ * The methods of this class are thread-safe.
+ */
+public final class KeyDepthMapChunkPool {
+
+    private static final Map<Integer, ArrayDeque<SoftReference<int[]>>> INT_CHUNKS = new HashMap<Integer, ArrayDeque<SoftReference<int[]>>>();
+    private static final Map<Integer, ArrayDeque<SoftReference<byte[]>>> BYTE_CHUNKS = new HashMap<Integer, ArrayDeque<SoftReference<byte[]>>>();
+
+    private static long maxPooledBytes = Runtime.getRuntime().maxMemory() / 4;
+    private static long pooledBytes = 0;     //approximate: includes chunks that have been freed by the garbage collector
+    private static long numAllocated = 0, numReused = 0;
+
+    private KeyDepthMapChunkPool() { }
+
+
+
+    /**
+     * Sets the maximum number of bytes of the chunks that are kept in the pool.
+     * The default is 1/4 of the maximum heap size. 0 disables the pool.
+     *
+     * @param bytes the maximum number of bytes
+     */
+    public static synchronized void setMaxPooledBytes(final long bytes) {
+        maxPooledBytes = bytes;
+        if (0 == bytes) {
+            INT_CHUNKS.clear();
+            BYTE_CHUNKS.clear();
+            pooledBytes = 0;
+        }
+    }
+
+    public static synchronized long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @return number of chunks that have been allocated because the pool had no chunk of the requested size
+     */
+    public static synchronized long getNumAllocated() {
+        return numAllocated;
+    }
+
+    /**
+     * @return number of chunks that have been taken from the pool
+     */
+    public static synchronized long getNumReused() {
+        return numReused;
+    }
+
+
+
+    /**
+     * @param length the number of elements
+     * @return a chunk filled with zeros, from the pool or newly allocated
+     */
+    static int[] getIntChunk(final int length) {
+        synchronized (KeyDepthMapChunkPool.class) {
+            final ArrayDeque<SoftReference<int[]>> chunks = INT_CHUNKS.get(Integer.valueOf(length));
+            while ((null != chunks) && (false == chunks.isEmpty())) {
+                final int[] chunk = chunks.pollLast().get();
+                pooledBytes -= length * 4L;
+                if (null != chunk) {
+                    ++numReused;
+                    return chunk;
+                }
+            }
+            ++numAllocated;
+        }
+        return new int[length];     //outside of synchronized because it takes some time
+    }
+
+    /**
+     * @param length the number of elements
+     * @return a chunk filled with zeros, from the pool or newly allocated
+     */
+    static byte[] getByteChunk(final int length) {
+        synchronized (KeyDepthMapChunkPool.class) {
+            final ArrayDeque<SoftReference<byte[]>> chunks = BYTE_CHUNKS.get(Integer.valueOf(length));
+            while ((null != chunks) && (false == chunks.isEmpty())) {
+                final byte[] chunk = chunks.pollLast().get();
+                pooledBytes -= length;
+                if (null != chunk) {
+                    ++numReused;
+                    return chunk;
+                }
+            }
+            ++numAllocated;
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Gives the chunk back to the pool. The caller must have filled it with zeros.
+     *
+     * @param chunk the chunk that is not used anymore
+     */
+    static synchronized void putIntChunk(final int[] chunk) {
+        if (pooledBytes + chunk.length * 4L <= maxPooledBytes) {
+            ArrayDeque<SoftReference<int[]>> chunks = INT_CHUNKS.get(Integer.valueOf(chunk.length));
+            if (null == chunks) {
+                chunks = new ArrayDeque<SoftReference<int[]>>();
+                INT_CHUNKS.put(Integer.valueOf(chunk.length), chunks);
+            }
+            chunks.addLast(new SoftReference<int[]>(chunk));
+            pooledBytes += chunk.length * 4L;
+        }
+    }
+
+    /**
+     * Gives the chunk back to the pool. The caller must have filled it with zeros.
+     *
+     * @param chunk the chunk that is not used anymore
+     */
+    static synchronized void putByteChunk(final byte[] chunk) {
+        if (pooledBytes + chunk.length <= maxPooledBytes) {
+            ArrayDeque<SoftReference<byte[]>> chunks = BYTE_CHUNKS.get(Integer.valueOf(chunk.length));
+            if (null == chunks) {
+                chunks = new ArrayDeque<SoftReference<byte[]>>();
+                BYTE_CHUNKS.put(Integer.valueOf(chunk.length), chunks);
+            }
+            chunks.addLast(new SoftReference<byte[]>(chunk));
+            pooledBytes += chunk.length;
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+
+/**
+ * This class is a thread-safe and lock-free variant of <code>KeyDepthMapTrieSpecial</code>.
+ * It can be shared by the threads of a multi-threaded solver.
+ * <p>
+ * It uses the same trie layout (one node level per robot, node sizes reduced by the
+ * sorted key elements and by the obstacles on the board, and a leaf node plus leaf
+ * for the last key element), but without the "compressed branches":<br>
+ * * new nodes and leaves are linked into the trie by compare-and-set on the node slots<br>
+ * * leaf values are updated by an atomic compare-and-set "maximum" loop<br>
+ * * each thread allocates nodes and leaves in its own chunks of memory,
+ *   so that threads don't compete for a common "next free node" pointer<br>
+ * <p>
+ * Like in <code>KeyDepthMapTrieSpecial</code>, the value 0 marks an unused leaf entry,
+ * so the values put into this map should be in the range 1...255.
+ */
+public final class KeyDepthMapConcurrent implements KeyDepthMap {
+
+    private static final int NODE_CHUNK_SHIFT = 16; // 16 == 256KB
+    private static final int NODE_CHUNK_SIZE = 1 << NODE_CHUNK_SHIFT;
+    private static final int NODE_CHUNK_MASK = NODE_CHUNK_SIZE - 1;
+    private static final int LEAF_CHUNK_SHIFT = 16; // 16 == 256KB (4 leaf values per int)
+    private static final int LEAF_CHUNK_SIZE = 1 << LEAF_CHUNK_SHIFT;
+    private static final int LEAF_CHUNK_MASK = LEAF_CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 15;
+
+    //plain arrays: a chunk is stored here by its allocating thread before any index
+    //into it is published by compare-and-set, which makes it visible to all other threads.
+    private final AtomicIntegerArray[] nodeChunks = new AtomicIntegerArray[MAX_CHUNKS];
+    private final AtomicIntegerArray[] leafChunks = new AtomicIntegerArray[MAX_CHUNKS];
+    private final AtomicInteger numNodeChunks = new AtomicInteger(1);   //chunk 0 contains the root node
+    private final AtomicInteger numLeafChunks = new AtomicInteger(1);   //chunk 0 is unused: leaf index 0 is the special value
+    private final AtomicIntegerArray rootNode;
+
+    private final int nodeNumber, nodeShift, nodeMask;
+    private final int leafNodeShift, leafNodeMask, leafNodeSize, leafMask, leafSizeInts;
+    private final int[] nodeSizeLookup;
+    private final int[] elementLookup;
+    private int putThreshold;           //1 = putIfGreater,  0 = putIfGreaterOrEqual (USE_SLOW_SEARCH_MORE_SOLUTIONS)
+
+    private final ThreadLocal<Allocator> allocators;
+    private final List<Allocator> allAllocators = new ArrayList<Allocator>();
+
+
+
+    /**
+     * Constructs an empty map that is tuned to the keys generated by solving a specific board.
+     *
+     * @param board the board that is to be solved
+     */
+    public KeyDepthMapConcurrent(final Board board) {
+        this.nodeSizeLookup = new int[board.size];
+        this.elementLookup = new int[board.size];
+        int numElements = 0;
+        for (int i = 0;  i < board.size;  ++i) {
+            this.elementLookup[i] = (board.isObstacle(i) ? Integer.MIN_VALUE : numElements++);
+        }
+        for (int i = 0;  i < board.size;  ++i) {
+            this.nodeSizeLookup[i] = (board.isObstacle(i) ? Integer.MIN_VALUE : numElements - 1 - this.elementLookup[i]);
+        }
+        final int numRobots = board.getNumRobots() - (board.isSolution01() ? 1 : 0);
+        this.nodeNumber = numRobots - 1;
+        this.nodeShift = board.sizeNumBits;
+        this.nodeMask = (1 << board.sizeNumBits) - 1;
+        this.leafNodeShift = board.sizeNumBits / 2;
+        this.leafNodeMask = (1 << this.leafNodeShift) - 1;
+        this.leafNodeSize = this.leafNodeMask + 1;
+        final int leafSize = 1 << (board.sizeNumBits - this.leafNodeShift);
+        this.leafMask = leafSize - 1;
+        this.leafSizeInts = (leafSize + 3) >>> 2;
+        this.putThreshold = (Solver.USE_SLOW_SEARCH_MORE_SOLUTIONS ? 0 : 1);
+
+        this.rootNode = new AtomicIntegerArray(NODE_CHUNK_SIZE);
+        this.nodeChunks[0] = this.rootNode;
+
+        this.allocators = new ThreadLocal<Allocator>() {
+            @Override
+            protected Allocator initialValue() {
+                final Allocator allocator = new Allocator();
+                synchronized (allAllocators) {
+                    allAllocators.add(allocator);
+                }
+                return allocator;
+            }
+        };
+    }
+
+
+
+    /**
+     * Changes the behaviour of the put methods: if <code>true</code> then they store values that are
+     * greater than or equal to the current values, else only values that are greater.
+     * No thread may modify this map during the change. The threads that modify the map
+     * afterwards must be started (or handed a task) after the change, so that they see it.
+     *
+     * @param orEqual <code>true</code> to put values that are greater or equal
+     */
+    public void setPutIfGreaterOrEqual(final boolean orEqual) {
+        this.putThreshold = (orEqual ? 0 : 1);
+    }
+
+
+
+    /**
+     * The allocator is used by a single thread only. It hands out nodes and leaves
+     * from chunks that belong to this thread.
+     */
+    private final class Allocator {
+        private int nextNode = 0, endNode = 0;
+        private int nextLeaf = 0, endLeaf = 0;
+        private int size = 0;
+
+        private int allocNode(final int nodeSize) {
+            if (this.nextNode + nodeSize > this.endNode) {
+                final int chunk = numNodeChunks.getAndIncrement();
+                if (chunk >= MAX_CHUNKS) { throw new OutOfMemoryError("KeyDepthMapConcurrent: too many node chunks"); }
+                nodeChunks[chunk] = new AtomicIntegerArray(NODE_CHUNK_SIZE);
+                this.nextNode = chunk << NODE_CHUNK_SHIFT;
+                this.endNode = this.nextNode + NODE_CHUNK_SIZE;
+            }
+            final int result = this.nextNode;
+            this.nextNode += nodeSize;
+            return result;
+        }
+
+        private int allocLeaf() {
+            if (this.nextLeaf + leafSizeInts > this.endLeaf) {
+                final int chunk = numLeafChunks.getAndIncrement();
+                if (chunk >= MAX_CHUNKS) { throw new OutOfMemoryError("KeyDepthMapConcurrent: too many leaf chunks"); }
+                leafChunks[chunk] = new AtomicIntegerArray(LEAF_CHUNK_SIZE);
+                this.nextLeaf = chunk << LEAF_CHUNK_SHIFT;
+                this.endLeaf = this.nextLeaf + LEAF_CHUNK_SIZE;
+            }
+            final int result = this.nextLeaf;
+            this.nextLeaf += leafSizeInts;
+            return result;
+        }
+    }
+
+
+
+    //returns the index of the node or leaf that is linked at the given slot. creates it if necessary.
+    private int getOrCreateChild(final AtomicIntegerArray nodeArray, final int nidx, final int childSize, final boolean isLeaf) {
+        int childIndex = nodeArray.get(nidx);
+        if (0 == childIndex) {
+            final Allocator allocator = this.allocators.get();
+            final int newIndex = (isLeaf ? allocator.allocLeaf() : allocator.allocNode(childSize));
+            if (nodeArray.compareAndSet(nidx, 0, newIndex)) {
+                childIndex = newIndex;
+            } else {
+                //another thread was faster: give back the unused memory (it hasn't been published)
+                if (isLeaf) {
+                    allocator.nextLeaf -= this.leafSizeInts;
+                } else {
+                    allocator.nextNode -= childSize;
+                }
+                childIndex = nodeArray.get(nidx);
+            }
+        }
+        return childIndex;
+    }
+
+
+
+    //atomic "maximum" update of a byte value packed into an int.
+    private boolean putLeafValue(final int leafIndex, final int element, final int byteValue) {
+        final int lidx = ((leafIndex & LEAF_CHUNK_MASK) << 2) + (element & this.leafMask);
+        final AtomicIntegerArray leafArray = this.leafChunks[leafIndex >>> LEAF_CHUNK_SHIFT];
+        final int iidx = lidx >>> 2;
+        final int shift = (lidx & 3) << 3;
+        for (;;) {
+            final int prevInt = leafArray.get(iidx);
+            final int prevVal = (prevInt >>> shift) & 0xff;
+            if (byteValue < prevVal + this.putThreshold) {
+                return false;
+            }
+            if (leafArray.compareAndSet(iidx, prevInt, (prevInt & ~(0xff << shift)) | (byteValue << shift))) {
+                if (0 == prevVal) {
+                    this.allocators.get().size++;
+                }
+                return true;
+            }
+        }
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(int key, final int byteValue) {
+        //root node
+        int elementThis = key & this.nodeMask;
+        int elementThisLookup = this.elementLookup[elementThis];
+        AtomicIntegerArray nodeArray = this.rootNode;
+        int nidx = elementThis;
+        //go through nodes
+        for (int i = 0;  i < this.nodeNumber - 1;  ++i) {
+            final int nodeIndex = this.getOrCreateChild(nodeArray, nidx, this.nodeSizeLookup[elementThis], false);
+            key >>>= this.nodeShift;
+            elementThis = key & this.nodeMask;
+            nidx = (nodeIndex & NODE_CHUNK_MASK) - elementThisLookup - 1;
+            elementThisLookup = this.elementLookup[elementThis];
+            nidx += elementThisLookup;
+            nodeArray = this.nodeChunks[nodeIndex >>> NODE_CHUNK_SHIFT];
+        }
+        //go through leaf node
+        final int nodeIndex = this.getOrCreateChild(nodeArray, nidx, this.leafNodeSize, false);
+        key >>>= this.nodeShift;
+        nodeArray = this.nodeChunks[nodeIndex >>> NODE_CHUNK_SHIFT];
+        nidx = (nodeIndex & NODE_CHUNK_MASK) + (key & this.leafNodeMask);
+        //get leaf
+        final int leafIndex = this.getOrCreateChild(nodeArray, nidx, 0, true);
+        return this.putLeafValue(leafIndex, key >>> this.leafNodeShift, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(long key, final int byteValue) {
+        //this method is copy&paste from putIfGreater(int,int) with only a few (int) casts added where required.
+        //root node
+        int elementThis = (int)key & this.nodeMask;
+        int elementThisLookup = this.elementLookup[elementThis];
+        AtomicIntegerArray nodeArray = this.rootNode;
+        int nidx = elementThis;
+        //go through nodes
+        for (int i = 0;  i < this.nodeNumber - 1;  ++i) {
+            final int nodeIndex = this.getOrCreateChild(nodeArray, nidx, this.nodeSizeLookup[elementThis], false);
+            key >>>= this.nodeShift;
+            elementThis = (int)key & this.nodeMask;
+            nidx = (nodeIndex & NODE_CHUNK_MASK) - elementThisLookup - 1;
+            elementThisLookup = this.elementLookup[elementThis];
+            nidx += elementThisLookup;
+            nodeArray = this.nodeChunks[nodeIndex >>> NODE_CHUNK_SHIFT];
+        }
+        //go through leaf node
+        final int nodeIndex = this.getOrCreateChild(nodeArray, nidx, this.leafNodeSize, false);
+        key >>>= this.nodeShift;
+        nodeArray = this.nodeChunks[nodeIndex >>> NODE_CHUNK_SHIFT];
+        nidx = (nodeIndex & NODE_CHUNK_MASK) + ((int)key & this.leafNodeMask);
+        //get leaf
+        final int leafIndex = this.getOrCreateChild(nodeArray, nidx, 0, true);
+        return this.putLeafValue(leafIndex, (int)(key >>> this.leafNodeShift), byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        int result = 0;
+        synchronized (this.allAllocators) {
+            for (final Allocator allocator : this.allAllocators) {
+                result += allocator.size;
+            }
+        }
+        return result;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        final long nodeChunks = Math.min(MAX_CHUNKS, this.numNodeChunks.get());
+        final long leafChunks = Math.min(MAX_CHUNKS, this.numLeafChunks.get()) - 1;
+        return (MAX_CHUNKS * 2 * 8L) + (nodeChunks << NODE_CHUNK_SHIFT) * 4L + (leafChunks << LEAF_CHUNK_SHIFT) * 4L;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public long nextAllocationBytes() {
+        return NODE_CHUNK_SIZE * 4L;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        //nothing to do: the memory is freed by the garbage collector
+    }
+
+}
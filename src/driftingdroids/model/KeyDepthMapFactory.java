@@ -47,6 +47,27 @@ public class KeyDepthMapFactory {
     }
 
 
+    /**
+     * Creates a new instance of KeyDepthMap that respects a memory limit right from the start.
+     * Uses this factory's default implementation class of KeyDepthMap, or
+     * <code>KeyDepthMapBounded</code> if the empty default map and its first chunk would already
+     * exceed the limit (the lookup array of <code>KeyDepthMapTrieSpecial</code> has 64 MB).
+     * The other implementations start small and grow in chunks, so the caller checks the limit
+     * with <code>nextAllocationBytes()</code> while the map grows.
+     *
+     * @param board the board that is to be solved
+     * @param memoryLimit the maximum number of bytes, or 0 for no limit
+     * @return a new instance of KeyDepthMap
+     */
+    public static KeyDepthMap newInstance(Board board, long memoryLimit) {
+        if ((0 != memoryLimit) && KeyDepthMapTrieSpecial.class.equals(defaultClazz)
+                && (memoryLimit < KeyDepthMapTrieSpecial.getInitialBytes(board, true) + KeyDepthMapTrieSpecial.NODE_ARRAY_SIZE * 4L)) {
+            return new KeyDepthMapBounded(memoryLimit);
+        }
+        return newInstance(board, defaultClazz);
+    }
+
+
     /**
      * Creates a new instance of KeyDepthMap.
      * 
@@ -59,6 +80,14 @@ public class KeyDepthMapFactory {
             return new KeyDepthMapTrieGeneric(Math.max(12, board.getNumRobots() * board.sizeNumBits));
         } else if (KeyDepthMapTrieSpecial.class.equals(clazz)) {
             return KeyDepthMapTrieSpecial.createInstance(board, true);
+        } else if (KeyDepthMapConcurrent.class.equals(clazz)) {
+            return new KeyDepthMapConcurrent(board);
+        } else if (KeyDepthMapTrieOffHeap.class.equals(clazz)) {
+            return new KeyDepthMapTrieOffHeap(board);
+        } else if (KeyDepthMapZobrist.class.equals(clazz)) {
+            return new KeyDepthMapZobrist();
+        } else if (KeyDepthMapHash.class.equals(clazz)) {
+            return new KeyDepthMapHash(board.getNumRobots() * board.sizeNumBits);
         } else {
             throw new IllegalArgumentException("unknown KeyDepthMap class: " + clazz);
         }
@@ -0,0 +1,209 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> that is a hash table with open addressing
+ * and linear probing. A lookup usually reads only one or two adjacent slots, while the
+ * tries follow one pointer per level.
+ * <p>
+ * If the keys have at most 56 bits, then key and value are packed into one
+ * <code>long</code> slot (key in the upper bits, value in the lowest 8 bits).
+ * Otherwise the values are stored in a separate <code>byte[]</code>.
+ * The table doubles its size when it is 3/4 full. At its maximum size it is filled up
+ * to the last unused slot, then <code>putIfGreater</code> throws an <code>OutOfMemoryError</code>.
+ * <p>
+ * Like in <code>KeyDepthMapTrieSpecial</code>, the value 0 marks an unused slot,
+ * so the values put into this map should be in the range 1...255.
+ */
+public final class KeyDepthMapHash implements KeyDepthMap {
+
+    private static final int INITIAL_CAPACITY_SHIFT = 16;
+    private static final int MAX_CAPACITY_SHIFT = 30;
+    private static final int MAX_PACKED_KEY_BITS = 64 - 8;
+
+    private long[] slots;               //packed: key << 8 | value,  wide: key
+    private byte[] wideValues;          //null if packed
+    private int capacityShift, mask, resizeThreshold;
+    private final int putThreshold;     //1 = putIfGreater,  0 = putIfGreaterOrEqual (USE_SLOW_SEARCH_MORE_SOLUTIONS)
+
+    private int size = 0;
+
+
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param keyBits the maximum number of bits of the keys
+     */
+    public KeyDepthMapHash(final int keyBits) {
+        this.allocate(INITIAL_CAPACITY_SHIFT, (keyBits > MAX_PACKED_KEY_BITS));
+        this.putThreshold = (Solver.USE_SLOW_SEARCH_MORE_SOLUTIONS ? 0 : 1);
+    }
+
+    private void allocate(final int capacityShift, final boolean isWide) {
+        final int capacity = 1 << capacityShift;
+        this.slots = new long[capacity];
+        this.wideValues = (isWide ? new byte[capacity] : null);
+        this.capacityShift = capacityShift;
+        this.mask = capacity - 1;
+        this.resizeThreshold = (capacity >>> 2) * 3;    //load factor 0.75
+    }
+
+    private int hash(final long key) {
+        //the keys are concatenated robot positions, so mix all bits into the upper bits
+        return (int)((key * 0x9e3779b97f4a7c15L) >>> (64 - this.capacityShift));
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(0xffffffffL & key, byteValue);
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        final boolean result = ((null == this.wideValues) ? this.putPacked(key, byteValue) : this.putWide(key, byteValue));
+        if (this.size > this.resizeThreshold) {
+            this.resize();
+        }
+        return result;
+    }
+
+    private boolean putPacked(final long key, final int byteValue) {
+        final long[] slots = this.slots;
+        final long keyShifted = key << 8;
+        int slot = this.hash(key);
+        while (true) {
+            final long prev = slots[slot];
+            if (0 == prev) {    //unused slot: the key is not in the map
+                slots[slot] = keyShifted | byteValue;
+                ++this.size;
+                return true;
+            }
+            if (keyShifted == (prev & ~0xffL)) {
+                if (byteValue >= (0xff & (int)prev) + this.putThreshold) {
+                    slots[slot] = keyShifted | byteValue;
+                    return true;
+                }
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    private boolean putWide(final long key, final int byteValue) {
+        final long[] slots = this.slots;
+        final byte[] values = this.wideValues;
+        int slot = this.hash(key);
+        while (true) {
+            final int prevValue = 0xff & values[slot];
+            if (0 == prevValue) {   //unused slot: the key is not in the map
+                slots[slot] = key;
+                values[slot] = (byte)byteValue;
+                ++this.size;
+                return true;
+            }
+            if (key == slots[slot]) {
+                if (byteValue >= prevValue + this.putThreshold) {
+                    values[slot] = (byte)byteValue;
+                    return true;
+                }
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    private void resize() {
+        if (this.capacityShift >= MAX_CAPACITY_SHIFT) {
+            //can't grow anymore: fill it up, but keep one unused slot, so that every probe sequence ends
+            if (this.size >= this.mask) {
+                throw new OutOfMemoryError("KeyDepthMapHash: the table is full (" + this.size + " keys)");
+            }
+            this.resizeThreshold = this.mask - 1;
+            return;
+        }
+        final long[] oldSlots = this.slots;
+        final byte[] oldValues = this.wideValues;
+        this.allocate(this.capacityShift + 1, (null != oldValues));
+        for (int i = 0;  i < oldSlots.length;  ++i) {
+            if (null == oldValues) {
+                final long packed = oldSlots[i];
+                if (0 != packed) {
+                    int slot = this.hash(packed >>> 8);
+                    while (0 != this.slots[slot]) {
+                        slot = (slot + 1) & this.mask;
+                    }
+                    this.slots[slot] = packed;
+                }
+            } else if (0 != oldValues[i]) {
+                int slot = this.hash(oldSlots[i]);
+                while (0 != this.wideValues[slot]) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.slots[slot] = oldSlots[i];
+                this.wideValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return this.slots.length * 8L + ((null == this.wideValues) ? 0 : this.wideValues.length);
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public long nextAllocationBytes() {
+        return this.allocatedBytes() << 1;     //resize: the new table has twice the capacity
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        //nothing to do: the memory is freed by the garbage collector
+    }
+
+}
@@ -397,4 +397,22 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
         return result;
     }
 
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public final long nextAllocationBytes() {
+        return NODE_ARRAY_SIZE * 4L;   //the node arrays are larger than the leaf arrays
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        //nothing to do: the memory is freed by the garbage collector
+    }
+
 }
@@ -0,0 +1,384 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> with the same trie layout as
+ * <code>KeyDepthMapTrieSpecial</code>, but its node and leaf arrays are stored
+ * outside of the Java heap, in slabs of direct <code>ByteBuffer</code>s.
+ * <p>
+ * The slabs are not touched by the garbage collector. They are freed by
+ * <code>release()</code> as soon as the search has finished, so a large search
+ * doesn't leave hundreds of megabytes of garbage in the old generation.
+ * <p>
+ * Like <code>KeyDepthMapTrieSpecial</code>, it works only with keys that are generated
+ * by the <code>KeyMakerInt</code> or <code>KeyMakerLong</code> classes.
+ */
+public final class KeyDepthMapTrieOffHeap implements KeyDepthMap {
+
+    private static final int NODE_ARRAY_SHIFT = 20; // 20 == 4MB
+    private static final int NODE_ARRAY_SIZE = 1 << NODE_ARRAY_SHIFT;
+    private static final int NODE_ARRAY_MASK = NODE_ARRAY_SIZE - 1;
+    private ByteBuffer[] nodeArrays;        //int elements, index * 4
+    private int numNodeArrays, nextNode, nextNodeArray;
+
+    private static final int LEAF_ARRAY_SHIFT = 20; // 20 == 1MB
+    private static final int LEAF_ARRAY_SIZE = 1 << LEAF_ARRAY_SHIFT;
+    private static final int LEAF_ARRAY_MASK = LEAF_ARRAY_SIZE - 1;
+    private ByteBuffer[] leafArrays;
+    private int numLeafArrays, nextLeaf, nextLeafArray;
+
+    private final int nodeNumber, nodeNumberUnCompr, nodeShift, nodeMask;
+    private final int leafNodeShift, leafNodeMask, leafNodeSize, leafSize, leafMask;
+
+    private final int[] nodeSizeLookup;
+    private final int[] elementLookup;
+    private final int putThreshold;     //1 = putIfGreater,  0 = putIfGreaterOrEqual (USE_SLOW_SEARCH_MORE_SOLUTIONS)
+
+    private int size = 0;
+    private boolean isReleased = false;
+
+    public KeyDepthMapTrieOffHeap(final Board board) {
+        this.nodeSizeLookup = new int[board.size];
+        for (int i = 0;  i < this.nodeSizeLookup.length;  ++i) {
+            this.nodeSizeLookup[i] = board.size - 1 - i;
+        }
+        this.elementLookup = new int[board.size];
+        for (int i = 0;  i < this.elementLookup.length;  ++i) {
+            this.elementLookup[i] = i;
+        }
+        for (int i = 0;  i < board.size;  ++i) {
+            if (true == board.isObstacle(i)) {
+                for (int j = 0;  j < i;  ++j) {
+                    this.nodeSizeLookup[j] -= 1;
+                }
+                for (int j = i;  j < this.elementLookup.length;  ++j) {
+                    this.elementLookup[j] -= 1;
+                }
+            }
+        }
+        for (int i = 0;  i < board.size;  ++i) {
+            if (true == board.isObstacle(i)) {
+                this.nodeSizeLookup[i] = Integer.MIN_VALUE;
+                this.elementLookup[i] = Integer.MIN_VALUE;
+            }
+        }
+        final int numRobots = board.getNumRobots() - (board.isSolution01() ? 1 : 0);
+        this.nodeNumber = numRobots - 1;
+        this.nodeNumberUnCompr = (numRobots*board.sizeNumBits + 8 - 31 + (board.sizeNumBits - 1)) / board.sizeNumBits;
+        this.nodeShift = board.sizeNumBits;
+        this.nodeMask = (1 << board.sizeNumBits) - 1;
+
+        this.nodeArrays = new ByteBuffer[4];
+        this.nodeArrays[0] = allocateSlab(NODE_ARRAY_SIZE * 4);   //root node
+        this.numNodeArrays = 1;
+        this.nextNode = board.size;             //root node already exists
+        this.nextNodeArray = NODE_ARRAY_SIZE;   //first array already exists
+
+        this.leafNodeShift = board.sizeNumBits / 2;
+        this.leafNodeMask = (1 << this.leafNodeShift) - 1;
+        this.leafNodeSize = this.leafNodeMask + 1;
+        this.leafSize = 1 << (board.sizeNumBits - this.leafNodeShift);
+        this.leafMask = this.leafSize - 1;
+        this.leafArrays = new ByteBuffer[16];
+        this.numLeafArrays = 0;
+        this.nextLeaf = this.leafSize;  //no leaves yet, but skip leaf "0" because this is the special value
+        this.nextLeafArray = 0;         //no leaf arrays yet
+
+        this.putThreshold = (Solver.USE_SLOW_SEARCH_MORE_SOLUTIONS ? 0 : 1);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(0xffffffffL & key, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(long key, final int byteValue) {
+        //this method follows KeyDepthMapTrieSpecial.putIfGreater(long,int),
+        //with the node and leaf arrays replaced by direct ByteBuffers.
+        //root node
+        int nidx = (int)key & this.nodeMask;
+        ByteBuffer nodeArray = this.nodeArrays[0];
+        int elementThis = nidx;
+        int elementThisLookup = this.elementLookup[nidx];
+        //go through nodes (without compression because (key<<8)+value is greater than "int")
+        int nodeIndex, i;   //used by both for() loops
+        for (i = 1;  i < this.nodeNumberUnCompr;  ++i) {
+            nodeIndex = nodeArray.getInt(nidx << 2);
+            key >>>= this.nodeShift;
+            if (0 == nodeIndex) {
+                //create a new node
+                nodeIndex = this.newNode(this.nodeSizeLookup[elementThis]);
+                nodeArray.putInt(nidx << 2, nodeIndex);
+            }
+            elementThis = (int)key & this.nodeMask;
+            nidx = (nodeIndex & NODE_ARRAY_MASK) - elementThisLookup - 1;
+            elementThisLookup = this.elementLookup[elementThis];
+            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+            nidx += elementThisLookup;
+        }
+        //go through nodes (with compression because (key<<8)+value is inside "int" range now)
+        for ( ;  i < this.nodeNumber;  ++i) {
+            nodeIndex = nodeArray.getInt(nidx << 2);
+            key >>>= this.nodeShift;
+            if (0 == nodeIndex) {
+                // -> node index is null = unused
+                //write current key+value as a "compressed branch" (negative node index)
+                //exit immediately because no further nodes and no leaf need to be stored
+                nodeArray.putInt(nidx << 2, ((~(int)key) << 8) | byteValue);    //negative
+                ++this.size;
+                return true;
+            } else if (0 > nodeIndex) {
+                // -> node index is negative = used by a single "compressed branch"
+                final int prevKey = (~nodeIndex) >> 8;
+                final int prevVal = 0xff & nodeIndex;
+                //previous and current keys are equal (duplicate key)
+                if (prevKey == (int)key) {
+                    if (byteValue >= prevVal + this.putThreshold) {
+                        nodeArray.putInt(nidx << 2, (nodeIndex ^ prevVal) | byteValue);    //negative
+                        return true;
+                    }
+                    return false;
+                }
+                //previous and current keys are not equal
+                //create a new node
+                nodeIndex = this.newNode(this.nodeSizeLookup[elementThis]);
+                nodeArray.putInt(nidx << 2, nodeIndex);
+                //push previous "compressed branch" one node further
+                nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+                elementThis = (int)key & this.nodeMask;
+                nidx = (nodeIndex & NODE_ARRAY_MASK) - elementThisLookup - 1;
+                elementThisLookup = this.elementLookup[elementThis];
+                nodeArray.putInt((nidx + this.elementLookup[prevKey & this.nodeMask]) << 2, (~(prevKey >>> this.nodeShift) << 8) | prevVal);
+            } else {
+                // -> node index is positive = go to next node
+                elementThis = (int)key & this.nodeMask;
+                nidx = (nodeIndex & NODE_ARRAY_MASK) - elementThisLookup - 1;
+                elementThisLookup = this.elementLookup[elementThis];
+                nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+            }
+            nidx += elementThisLookup;
+        }
+        //go through leaf node (with compression)
+        nodeIndex = nodeArray.getInt(nidx << 2);
+        key >>>= this.nodeShift;
+        if (0 == nodeIndex) {
+            // -> node index is null = unused
+            //write current key+value as a "compressed branch" (negative node index)
+            //exit immediately because no further nodes and no leaf need to be stored
+            nodeArray.putInt(nidx << 2, ((~(int)key) << 8) | byteValue);    //negative
+            ++this.size;
+            return true;
+        } else if (0 > nodeIndex) {
+            // -> node index is negative = used by a single "compressed branch"
+            final int prevKey = (~nodeIndex) >> 8;
+            final int prevVal = 0xff & nodeIndex;
+            //previous and current keys are equal (duplicate key)
+            if (prevKey == (int)key) {
+                if (byteValue >= prevVal + this.putThreshold) {
+                    nodeArray.putInt(nidx << 2, (nodeIndex ^ prevVal) | byteValue);    //negative
+                    return true;
+                }
+                return false;
+            }
+            //previous and current keys are not equal
+            //create a new node
+            nodeIndex = this.newNode(this.leafNodeSize);
+            nodeArray.putInt(nidx << 2, nodeIndex);
+            //push previous "compressed branch" one node further
+            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+            nidx = (nodeIndex & NODE_ARRAY_MASK) + (prevKey & this.leafNodeMask);
+            nodeArray.putInt(nidx << 2, (~(prevKey >>> this.leafNodeShift) << 8) | prevVal);    //negative
+        } else {
+            // -> node index is positive = go to next node
+            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+        }
+        nidx = (nodeIndex & NODE_ARRAY_MASK) + ((int)key & this.leafNodeMask);
+        //get leaf (with compression)
+        int leafIndex = nodeArray.getInt(nidx << 2);
+        key >>>= this.leafNodeShift;
+        if (0 == leafIndex) {
+            // -> leaf index is null = unused
+            //write current value as a "compressed branch" (negative leaf index)
+            //exit immediately because no leaf needs to be stored
+            nodeArray.putInt(nidx << 2, ((~(int)key) << 8) | byteValue);    //negative
+            ++this.size;
+            return true;
+        } else if (0 > leafIndex) {
+            // -> leaf index is negative = used by a single "compressed branch"
+            final int prevKey = (~leafIndex) >> 8;
+            final int prevVal = 0xff & leafIndex;
+            //previous and current keys are equal (duplicate key)
+            if (prevKey == (int)key) {
+                if (byteValue >= prevVal + this.putThreshold) {
+                    nodeArray.putInt(nidx << 2, (leafIndex ^ prevVal) | byteValue);    //negative
+                    return true;
+                }
+                return false;
+            }
+            //previous and current keys are not equal
+            //create a new leaf
+            if (this.nextLeaf >= this.nextLeafArray) {
+                if (this.leafArrays.length <= this.numLeafArrays) {
+                    this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
+                }
+                this.leafArrays[this.numLeafArrays++] = allocateSlab(LEAF_ARRAY_SIZE);
+                this.nextLeafArray += LEAF_ARRAY_SIZE;
+            }
+            leafIndex = this.nextLeaf;
+            this.nextLeaf += this.leafSize;
+            nodeArray.putInt(nidx << 2, leafIndex);
+            //push the previous "compressed branch" further to the leaf
+            final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (prevKey & this.leafMask);
+            this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT].put(lidx, (byte)prevVal);
+        }
+        final ByteBuffer leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
+        final int lidx = (leafIndex & LEAF_ARRAY_MASK) + ((int)key & this.leafMask);
+        final int prevVal = 0xff & leafArray.get(lidx);
+        if (byteValue >= prevVal + this.putThreshold) {
+            leafArray.put(lidx, (byte)byteValue);
+            if (0 == prevVal) { ++this.size; }   //new key
+            return true;
+        }
+        return false;
+    }
+
+
+    //allocate a node of the specified size and return its index
+    private int newNode(final int nodeSize) {
+        if (this.nextNode + nodeSize > this.nextNodeArray) {
+            if (this.nodeArrays.length <= this.numNodeArrays) {
+                this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
+            }
+            this.nodeArrays[this.numNodeArrays++] = allocateSlab(NODE_ARRAY_SIZE * 4);
+            this.nextNode = this.nextNodeArray;
+            this.nextNodeArray += NODE_ARRAY_SIZE;
+        }
+        final int nodeIndex = this.nextNode;
+        this.nextNode += nodeSize;
+        return nodeIndex;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return (long)this.numNodeArrays * NODE_ARRAY_SIZE * 4 + (long)this.numLeafArrays * LEAF_ARRAY_SIZE;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public long nextAllocationBytes() {
+        return NODE_ARRAY_SIZE * 4L;   //the node arrays are larger than the leaf arrays
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        if (false == this.isReleased) {
+            this.isReleased = true;
+            for (int i = 0;  i < this.numNodeArrays;  ++i) {
+                freeSlab(this.nodeArrays[i]);
+            }
+            for (int i = 0;  i < this.numLeafArrays;  ++i) {
+                freeSlab(this.leafArrays[i]);
+            }
+            this.nodeArrays = null;
+            this.leafArrays = null;
+        }
+    }
+
+
+
+    private static ByteBuffer allocateSlab(final int numBytes) {
+        //allocateDirect() returns zeroed memory, 0 is the "unused" value of nodes and leaves
+        return ByteBuffer.allocateDirect(numBytes).order(ByteOrder.nativeOrder());
+    }
+
+    //free the memory of a direct ByteBuffer now, instead of waiting for the garbage collector.
+    //Java 9+: sun.misc.Unsafe.invokeCleaner(ByteBuffer)  Java 8: ((sun.nio.ch.DirectBuffer)buffer).cleaner().clean()
+    private static void freeSlab(final ByteBuffer slab) {
+        try {
+            if (null != INVOKE_CLEANER) {
+                INVOKE_CLEANER.invoke(UNSAFE, slab);
+            } else {
+                final Method cleanerMethod = slab.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(slab);
+                if (null != cleaner) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception ignored) {
+            //the memory is freed by the garbage collector
+        }
+    }
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (Exception ignored) {
+            invokeCleaner = null;   //Java 8
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+}
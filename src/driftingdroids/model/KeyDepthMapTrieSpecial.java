@@ -36,6 +36,9 @@ import java.util.Arrays;
  * * keys consist of N elements: the positions of the N robots on the board<br>
  * * all elements 1...N of a key are unique: no two robots are on the same position<br>
  * * elements 1...N-1 of a key are sorted: non-goal robots can be substituted for each other<br>
+ * <p>
+ * The large arrays are taken from the <code>KeyDepthMapChunkPool</code>.
+ * <code>release()</code> clears their used parts and gives them back to the pool.
  *
  */
 public class KeyDepthMapTrieSpecial implements KeyDepthMap {
@@ -60,9 +63,10 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
     protected final int[] elementLookup;
     
     protected int size = 0;
+    protected boolean isReleased = false;
 
     public static KeyDepthMapTrieSpecial createInstance(final Board board, final boolean useMoreMemoryForSpeedup) {
-        if (useMoreMemoryForSpeedup && (8 == board.sizeNumBits) && ((4 == board.getNumRobots()) || (5 == board.getNumRobots()))) {
+        if (true == isLookup8Bit(board, useMoreMemoryForSpeedup)) {
             if (Solver.USE_SLOW_SEARCH_MORE_SOLUTIONS) {
                 Logger.println("UseSlowSearchMoreSolutions");
                 return new KeyDepthMapTrieSpecial8BitEqual(board);
@@ -79,6 +83,26 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         }
     }
 
+    /**
+     * Returns the number of bytes that a new map allocates before any key is put into it
+     * (the root node array, plus the lookup array of the 8-bit variant).
+     *
+     * @param board the board that is to be solved
+     * @param useMoreMemoryForSpeedup the same parameter as in <code>createInstance</code>
+     * @return number of bytes allocated by an empty map
+     */
+    public static long getInitialBytes(final Board board, final boolean useMoreMemoryForSpeedup) {
+        long result = NODE_ARRAY_SIZE * 4L;
+        if (true == isLookup8Bit(board, useMoreMemoryForSpeedup)) {
+            result += (KeyDepthMapTrieSpecial8Bit.LOOKUP_MASK + 1) * 4L;
+        }
+        return result;
+    }
+
+    private static boolean isLookup8Bit(final Board board, final boolean useMoreMemoryForSpeedup) {
+        return useMoreMemoryForSpeedup && (8 == board.sizeNumBits) && ((4 == board.getNumRobots()) || (5 == board.getNumRobots()));
+    }
+
     private KeyDepthMapTrieSpecial(final Board board) {
         this.nodeSizeLookup = new int[board.size];
         for (int i = 0;  i < this.nodeSizeLookup.length;  ++i) {
@@ -111,7 +135,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         this.nodeMask = (1 << board.sizeNumBits) - 1;
 
         this.nodeArrays = new int[4][];
-        this.rootNode = new int[NODE_ARRAY_SIZE];
+        this.rootNode = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
         this.nodeArrays[0] = this.rootNode;
         this.numNodeArrays = 1;
         this.nextNode = board.size;             //root node already exists
@@ -151,7 +175,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -174,6 +198,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -194,7 +219,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -224,6 +249,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             //write current key+value as a "compressed branch" (negative node index)
             //exit immediately because no further nodes and no leaf need to be stored
             nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+            ++this.size;
             return true;
         } else if (0 > nodeIndex) {
             // -> node index is negative = used by a single "compressed branch"
@@ -243,7 +269,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 if (this.nodeArrays.length <= this.numNodeArrays) {
                     this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                 }
-                this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                 this.nextNode = this.nextNodeArray;
                 this.nextNodeArray += NODE_ARRAY_SIZE;
             }
@@ -267,6 +293,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             //write current value as a "compressed branch" (negative leaf index)
             //exit immediately because no leaf needs to be stored
             nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+            ++this.size;
             return true;
         } else if (0 > leafIndex) {
             // -> leaf index is negative = used by a single "compressed branch"
@@ -286,7 +313,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 if (this.leafArrays.length <= this.numLeafArrays) {
                     this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                 }
-                final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                 this.leafArrays[this.numLeafArrays++] = newLeafArray;
                 this.nextLeafArray += LEAF_ARRAY_SIZE;
             }
@@ -302,6 +329,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         final byte prevVal = leafArray[lidx];
         if (byteValue > (0xff & prevVal)) {  //putIfGreater
             leafArray[lidx] = (byte)byteValue;
+            if (0 == prevVal) { ++this.size; }   //new key
             return true;
         }
         return false;
@@ -331,7 +359,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -354,6 +382,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -374,7 +403,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -404,6 +433,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             //write current key+value as a "compressed branch" (negative node index)
             //exit immediately because no further nodes and no leaf need to be stored
             nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+            ++this.size;
             return true;
         } else if (0 > nodeIndex) {
             // -> node index is negative = used by a single "compressed branch"
@@ -423,7 +453,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 if (this.nodeArrays.length <= this.numNodeArrays) {
                     this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                 }
-                this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                 this.nextNode = this.nextNodeArray;
                 this.nextNodeArray += NODE_ARRAY_SIZE;
             }
@@ -447,6 +477,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             //write current value as a "compressed branch" (negative leaf index)
             //exit immediately because no leaf needs to be stored
             nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+            ++this.size;
             return true;
         } else if (0 > leafIndex) {
             // -> leaf index is negative = used by a single "compressed branch"
@@ -466,7 +497,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 if (this.leafArrays.length <= this.numLeafArrays) {
                     this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                 }
-                final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                 this.leafArrays[this.numLeafArrays++] = newLeafArray;
                 this.nextLeafArray += LEAF_ARRAY_SIZE;
             }
@@ -482,6 +513,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         final byte prevVal = leafArray[lidx];
         if (byteValue > (0xff & prevVal)) {  //putIfGreater
             leafArray[lidx] = (byte)byteValue;
+            if (0 == prevVal) { ++this.size; }   //new key
             return true;
         }
         return false;
@@ -493,14 +525,18 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
      */
     @Override
     public long allocatedBytes() {
-        long result = (this.nodeArrays.length + this.leafArrays.length) * 8L;
-        for (int i = 0;  i < this.numNodeArrays;  ++i) {
-            result += this.nodeArrays[i].length * 4L;
-        }
-        for (int i = 0;  i < this.numLeafArrays;  ++i) {
-            result += this.leafArrays[i].length;
-        }
-        return result;
+        //all node arrays and leaf arrays have the same size, so the solver can call this after each put
+        return (this.nodeArrays.length + this.leafArrays.length) * 8L
+                + this.numNodeArrays * (NODE_ARRAY_SIZE * 4L) + this.numLeafArrays * (long)LEAF_ARRAY_SIZE;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public long nextAllocationBytes() {
+        return NODE_ARRAY_SIZE * 4L;   //the node arrays are larger than the leaf arrays
     }
 
 
@@ -513,6 +549,33 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
     }
 
 
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        if (true == this.isReleased) {
+            return;
+        }
+        this.isReleased = true;
+        //clear only the parts of the arrays that have been used, then give them to the pool
+        for (int i = 0;  i < this.numNodeArrays;  ++i) {
+            final int used = ((i == this.numNodeArrays - 1) ? this.nextNode - (i << NODE_ARRAY_SHIFT) : NODE_ARRAY_SIZE);
+            Arrays.fill(this.nodeArrays[i], 0, used, 0);
+            KeyDepthMapChunkPool.putIntChunk(this.nodeArrays[i]);
+            this.nodeArrays[i] = null;
+        }
+        for (int i = 0;  i < this.numLeafArrays;  ++i) {
+            final int used = ((i == this.numLeafArrays - 1) ? Math.min(LEAF_ARRAY_SIZE, this.nextLeaf - (i << LEAF_ARRAY_SHIFT)) : LEAF_ARRAY_SIZE);
+            Arrays.fill(this.leafArrays[i], 0, used, (byte)0);
+            KeyDepthMapChunkPool.putByteChunk(this.leafArrays[i]);
+            this.leafArrays[i] = null;
+        }
+        this.numNodeArrays = 0;
+        this.numLeafArrays = 0;
+    }
+
+
     /**
      * this class is used to find a larger number of distinct, equally good solutions,
      * especially those that share some robot positions and would normally be excluded
@@ -545,7 +608,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                         if (this.nodeArrays.length <= this.numNodeArrays) {
                             this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                         }
-                        this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                        this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                         this.nextNode = this.nextNodeArray;
                         this.nextNodeArray += NODE_ARRAY_SIZE;
                     }
@@ -568,6 +631,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     //write current key+value as a "compressed branch" (negative node index)
                     //exit immediately because no further nodes and no leaf need to be stored
                     nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                    ++this.size;
                     return true;
                 } else if (0 > nodeIndex) {
                     // -> node index is negative = used by a single "compressed branch"
@@ -588,7 +652,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                         if (this.nodeArrays.length <= this.numNodeArrays) {
                             this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                         }
-                        this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                        this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                         this.nextNode = this.nextNodeArray;
                         this.nextNodeArray += NODE_ARRAY_SIZE;
                     }
@@ -618,6 +682,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -637,7 +702,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -661,6 +726,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current value as a "compressed branch" (negative leaf index)
                 //exit immediately because no leaf needs to be stored
                 nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > leafIndex) {
                 // -> leaf index is negative = used by a single "compressed branch"
@@ -680,7 +746,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.leafArrays.length <= this.numLeafArrays) {
                         this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                     }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                    final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                     this.leafArrays[this.numLeafArrays++] = newLeafArray;
                     this.nextLeafArray += LEAF_ARRAY_SIZE;
                 }
@@ -696,6 +762,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             final byte prevVal = leafArray[lidx];
             if (byteValue >= (0xff & prevVal)) {  //putIfGreaterOrEqual
                 leafArray[lidx] = (byte)byteValue;
+                if (0 == prevVal) { ++this.size; }   //new key
                 return true;
             }
             return false;
@@ -721,7 +788,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                         if (this.nodeArrays.length <= this.numNodeArrays) {
                             this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                         }
-                        this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                        this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                         this.nextNode = this.nextNodeArray;
                         this.nextNodeArray += NODE_ARRAY_SIZE;
                     }
@@ -744,6 +811,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     //write current key+value as a "compressed branch" (negative node index)
                     //exit immediately because no further nodes and no leaf need to be stored
                     nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                    ++this.size;
                     return true;
                 } else if (0 > nodeIndex) {
                     // -> node index is negative = used by a single "compressed branch"
@@ -764,7 +832,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                         if (this.nodeArrays.length <= this.numNodeArrays) {
                             this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                         }
-                        this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                        this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                         this.nextNode = this.nextNodeArray;
                         this.nextNodeArray += NODE_ARRAY_SIZE;
                     }
@@ -794,6 +862,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -813,7 +882,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -837,6 +906,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current value as a "compressed branch" (negative leaf index)
                 //exit immediately because no leaf needs to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > leafIndex) {
                 // -> leaf index is negative = used by a single "compressed branch"
@@ -856,7 +926,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.leafArrays.length <= this.numLeafArrays) {
                         this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                     }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                    final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                     this.leafArrays[this.numLeafArrays++] = newLeafArray;
                     this.nextLeafArray += LEAF_ARRAY_SIZE;
                 }
@@ -872,6 +942,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             final byte prevVal = leafArray[lidx];
             if (byteValue >= (0xff & prevVal)) {  //putIfGreaterOrEqual
                 leafArray[lidx] = (byte)byteValue;
+                if (0 == prevVal) { ++this.size; }   //new key
                 return true;
             }
             return false;
@@ -889,10 +960,12 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         protected static final int LOOKUP_SHIFT_2 = 2 * 8;
         protected static final int LOOKUP_MASK = (1 << LOOKUP_SHIFT) - 1;
         protected final int[] lookupArray;
+        protected static final int LOOKUP_PAGE_SHIFT = 12;
+        protected final boolean[] lookupPageUsed = new boolean[(LOOKUP_MASK >>> LOOKUP_PAGE_SHIFT) + 1];
 
         private KeyDepthMapTrieSpecial8Bit(final Board board) {
             super(board);
-            this.lookupArray = new int[LOOKUP_MASK + 1]; // 64 MiB
+            this.lookupArray = KeyDepthMapChunkPool.getIntChunk(LOOKUP_MASK + 1); // 64 MiB
         }
 
         @Override
@@ -906,6 +979,8 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 this.lookupArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                this.lookupPageUsed[nidx >>> LOOKUP_PAGE_SHIFT] = true;
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -925,7 +1000,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -949,6 +1024,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current value as a "compressed branch" (negative leaf index)
                 //exit immediately because no leaf needs to be stored
                 nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > leafIndex) {
                 // -> leaf index is negative = used by a single "compressed branch"
@@ -968,7 +1044,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.leafArrays.length <= this.numLeafArrays) {
                         this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                     }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                    final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                     this.leafArrays[this.numLeafArrays++] = newLeafArray;
                     this.nextLeafArray += LEAF_ARRAY_SIZE;
                 }
@@ -984,6 +1060,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             final byte prevVal = leafArray[lidx];
             if (byteValue > (0xff & prevVal)) {  //putIfGreater
                 leafArray[lidx] = (byte)byteValue;
+                if (0 == prevVal) { ++this.size; }   //new key
                 return true;
             }
             return false;
@@ -1003,6 +1080,8 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 this.lookupArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                this.lookupPageUsed[nidx >>> LOOKUP_PAGE_SHIFT] = true;
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -1023,7 +1102,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -1052,6 +1131,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -1071,7 +1151,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -1095,6 +1175,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current value as a "compressed branch" (negative leaf index)
                 //exit immediately because no leaf needs to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > leafIndex) {
                 // -> leaf index is negative = used by a single "compressed branch"
@@ -1114,7 +1195,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.leafArrays.length <= this.numLeafArrays) {
                         this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                     }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                    final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                     this.leafArrays[this.numLeafArrays++] = newLeafArray;
                     this.nextLeafArray += LEAF_ARRAY_SIZE;
                 }
@@ -1130,6 +1211,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             final byte prevVal = leafArray[lidx];
             if (byteValue > (0xff & prevVal)) {  //putIfGreater
                 leafArray[lidx] = (byte)byteValue;
+                if (0 == prevVal) { ++this.size; }   //new key
                 return true;
             }
             return false;
@@ -1139,6 +1221,21 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         public long allocatedBytes() {
             return super.allocatedBytes() + this.lookupArray.length * 4L;
         }
+
+        @Override
+        public void release() {
+            if (false == this.isReleased) {
+                //clear only the pages of the lookup array that have been used
+                for (int page = 0;  page < this.lookupPageUsed.length;  ++page) {
+                    if (true == this.lookupPageUsed[page]) {
+                        Arrays.fill(this.lookupArray, page << LOOKUP_PAGE_SHIFT, (page + 1) << LOOKUP_PAGE_SHIFT, 0);
+                        this.lookupPageUsed[page] = false;
+                    }
+                }
+                KeyDepthMapChunkPool.putIntChunk(this.lookupArray);
+            }
+            super.release();
+        }
     }
 
 
@@ -1166,6 +1263,8 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 this.lookupArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                this.lookupPageUsed[nidx >>> LOOKUP_PAGE_SHIFT] = true;
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -1185,7 +1284,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -1209,6 +1308,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current value as a "compressed branch" (negative leaf index)
                 //exit immediately because no leaf needs to be stored
                 nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > leafIndex) {
                 // -> leaf index is negative = used by a single "compressed branch"
@@ -1228,7 +1328,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.leafArrays.length <= this.numLeafArrays) {
                         this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                     }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                    final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                     this.leafArrays[this.numLeafArrays++] = newLeafArray;
                     this.nextLeafArray += LEAF_ARRAY_SIZE;
                 }
@@ -1244,6 +1344,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             final byte prevVal = leafArray[lidx];
             if (byteValue >= (0xff & prevVal)) {  //putIfGreaterOrEqual
                 leafArray[lidx] = (byte)byteValue;
+                if (0 == prevVal) { ++this.size; }   //new key
                 return true;
             }
             return false;
@@ -1263,6 +1364,8 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 this.lookupArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                this.lookupPageUsed[nidx >>> LOOKUP_PAGE_SHIFT] = true;
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -1283,7 +1386,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -1312,6 +1415,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current key+value as a "compressed branch" (negative node index)
                 //exit immediately because no further nodes and no leaf need to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > nodeIndex) {
                 // -> node index is negative = used by a single "compressed branch"
@@ -1331,7 +1435,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.nodeArrays.length <= this.numNodeArrays) {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.nodeArrays[this.numNodeArrays++] = KeyDepthMapChunkPool.getIntChunk(NODE_ARRAY_SIZE);
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -1355,6 +1459,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //write current value as a "compressed branch" (negative leaf index)
                 //exit immediately because no leaf needs to be stored
                 nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
+                ++this.size;
                 return true;
             } else if (0 > leafIndex) {
                 // -> leaf index is negative = used by a single "compressed branch"
@@ -1374,7 +1479,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                     if (this.leafArrays.length <= this.numLeafArrays) {
                         this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                     }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+                    final byte[] newLeafArray = KeyDepthMapChunkPool.getByteChunk(LEAF_ARRAY_SIZE);
                     this.leafArrays[this.numLeafArrays++] = newLeafArray;
                     this.nextLeafArray += LEAF_ARRAY_SIZE;
                 }
@@ -1390,6 +1495,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             final byte prevVal = leafArray[lidx];
             if (byteValue >= (0xff & prevVal)) {  //putIfGreaterOrEqual
                 leafArray[lidx] = (byte)byteValue;
+                if (0 == prevVal) { ++this.size; }   //new key
                 return true;
             }
             return false;
@@ -0,0 +1,164 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> for Zobrist keys: the 64-bit key of a state
+ * is the XOR of random codes of the robot positions (see <code>SolverIDDFS</code>).
+ * The key of a new state is computed from the key of the previous state, when only one
+ * robot has moved, so there is no need to sort the robot positions for each new state.
+ * <p>
+ * The map is a hash table with open addressing and linear probing. The keys are random
+ * numbers already, so their low bits are used as hash. The complete keys are stored.
+ * Different states have the same key with a probability of about n*n/2^65 for n states
+ * (less than 1e-5 for 10 million states). In this case a state would be taken as known
+ * and a solution could be missed.
+ * <p>
+ * Like in <code>KeyDepthMapTrieSpecial</code>, the value 0 marks an unused slot,
+ * so the values put into this map should be in the range 1...255.
+ * <p>
+ * When the <code>KeyDepthMapFactory</code> creates instances of this class,
+ * then <code>SolverIDDFS</code> uses Zobrist keys instead of the <code>KeyMakerInt</code>
+ * and <code>KeyMakerLong</code> keys.
+ */
+public final class KeyDepthMapZobrist implements KeyDepthMap {
+
+    private static final int INITIAL_CAPACITY_SHIFT = 16;
+    private static final int MAX_CAPACITY_SHIFT = 30;
+
+    private long[] keys;
+    private byte[] values;
+    private int mask, resizeThreshold;
+    private final int putThreshold;     //1 = putIfGreater,  0 = putIfGreaterOrEqual (USE_SLOW_SEARCH_MORE_SOLUTIONS)
+
+    private int size = 0;
+
+
+
+    public KeyDepthMapZobrist() {
+        this.allocate(1 << INITIAL_CAPACITY_SHIFT);
+        this.putThreshold = (Solver.USE_SLOW_SEARCH_MORE_SOLUTIONS ? 0 : 1);
+    }
+
+    private void allocate(final int capacity) {
+        this.keys = new long[capacity];
+        this.values = new byte[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (capacity >>> 2) * 3;    //load factor 0.75
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(0xffffffffL & key, byteValue);
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        final long[] keys = this.keys;
+        final byte[] values = this.values;
+        int slot = (int)key & this.mask;
+        while (true) {
+            final int prevValue = 0xff & values[slot];
+            if (0 == prevValue) {   //unused slot: the key is not in the map
+                keys[slot] = key;
+                values[slot] = (byte)byteValue;
+                if (++this.size > this.resizeThreshold) {
+                    this.resize();
+                }
+                return true;
+            }
+            if (key == keys[slot]) {
+                if (byteValue >= prevValue + this.putThreshold) {
+                    values[slot] = (byte)byteValue;
+                    return true;
+                }
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    private void resize() {
+        if (this.keys.length >= (1 << MAX_CAPACITY_SHIFT)) {
+            //can't grow anymore: fill it up, but keep one unused slot, so that every probe sequence ends
+            if (this.size >= this.mask) {
+                throw new OutOfMemoryError("KeyDepthMapZobrist: the table is full (" + this.size + " keys)");
+            }
+            this.resizeThreshold = this.mask - 1;
+            return;
+        }
+        final long[] oldKeys = this.keys;
+        final byte[] oldValues = this.values;
+        this.allocate(oldKeys.length << 1);
+        for (int i = 0;  i < oldKeys.length;  ++i) {
+            if (0 != oldValues[i]) {
+                int slot = (int)oldKeys[i] & this.mask;
+                while (0 != this.values[slot]) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return this.keys.length * 8L + this.values.length;
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#nextAllocationBytes()
+     */
+    @Override
+    public long nextAllocationBytes() {
+        return this.allocatedBytes() << 1;     //resize: the new table has twice the capacity
+    }
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#release()
+     */
+    @Override
+    public void release() {
+        //nothing to do: the memory is freed by the garbage collector
+    }
+
+}
@@ -0,0 +1,601 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import driftingdroids.model.Solver.SOLUTION_MODE;
+
+
+
+/**
+ * This solver finds the optimal solutions of many goals for the same robot positions.
+ * <p>
+ * Instead of one search per goal, it runs a single iterative deepening depth-first search
+ * and checks all goals that have not been reached yet at each node. The states keep the identity
+ * of the robots that have pending goals (the robots of a state are not sorted like the keys of
+ * the other solvers), because each goal belongs to a different robot.
+ * <p>
+ * Each goal has its own lower bound of moves, like <code>SolverIDDFS</code>: the number of moves
+ * that its robot needs to reach the goal if it could stop anywhere. A node is pruned if no
+ * goal that has not been reached yet can be reached within the remaining moves, and if a goal
+ * needs all remaining moves, then only its robot is moved (and only if it could reach one of its
+ * goals without the help of the other robots). The nodes of all goals share one
+ * transposition table, which stores the remaining moves of each known state. The robots that
+ * have no pending goals can be substituted for each other, so their positions are sorted in
+ * the keys of the table. This set of robots only grows during the search, so the keys that
+ * were stored before remain valid. As soon as all pending goals belong to the same robot,
+ * the keys are made like those of <code>SolverIDDFS</code>, and the table is replaced by the
+ * faster <code>KeyDepthMap</code> that it uses.
+ * <p>
+ * When only one goal is left, the search would be the same as that of <code>SolverIDDFS</code>,
+ * so this goal is solved by <code>SolverIDDFS</code>. So is the wildcard goal: for it, all robots
+ * can be substituted for each other, which is only possible in a search of its own.
+ * The goals that have the special rule of <code>Board.isSolution01()</code>, and all goals if
+ * the option "no rebound moves" is set, are solved by <code>SolverIDDFS</code>, one by one, too.
+ */
+public class MultiGoalSolver {
+
+    private static final int MAX_SOLUTIONS_PER_GOAL = 100;
+    private static final int MAX_DEPTH = 126;
+
+    private final Board board;
+    private final List<Board.Goal> goals;
+    private final int numRobots;
+    private final int[][] boardWallStops;   //[direction][position] = position where the robot stops at a wall
+    private final int[] boardColumns;
+    private final int stateBits;
+
+    private SOLUTION_MODE optSolutionMode = SOLUTION_MODE.MINIMUM;
+    private boolean optAllowRebounds = true;
+
+    private List<Board.Goal> searchGoals;
+    private int[][] goalMinimumMoves;       //[goal][position] = lower bound of moves of the goal robot
+    private int[][] goalsAtPosition;        //[robot * board.size + position] = indexes of the goals that the robot reaches there
+    private boolean[] isGoalPending;
+    private int[][] robotMinimumMoves;      //[robot][position] = minimum of goalMinimumMoves of the pending goals of the robot
+    private int[] freeRobots;               //the robots without pending goals: they can be substituted for each other
+    private int[] keyState;
+    private int[] aloneQueue, aloneVisited, aloneState;
+    private int aloneStamp;
+    private List<List<int[][]>> goalPaths;  //[goal] = paths of states of the solutions
+    private KeyDepthMap knownStates;
+    private int[] keyRobotOrder;            //not null if the keys are made by keyMakerInt or keyMakerLong
+    private KeyMakerInt keyMakerInt;
+    private KeyMakerLong keyMakerLong;
+    private int[][] states;
+    private int depthLimit;
+
+    private long solutionMilliSeconds = 0;
+    private int solutionStoredStates = 0;
+
+
+
+    /**
+     * Creates a solver for all goals of the board that belong to one of its robots
+     * (or to any robot: the wildcard goal).
+     *
+     * @param board the board
+     */
+    public MultiGoalSolver(final Board board) {
+        this(board, board.getGoals());
+    }
+
+    /**
+     * Creates a solver for the specified goals.
+     *
+     * @param board the board
+     * @param goals the goals to be solved; goals that belong to a robot number that is not on the board are ignored.
+     */
+    public MultiGoalSolver(final Board board, final List<Board.Goal> goals) {
+        this.board = board;
+        this.numRobots = board.getNumRobots();
+        this.goals = new ArrayList<Board.Goal>();
+        for (final Board.Goal goal : goals) {
+            if (goal.robotNumber < this.numRobots) {
+                this.goals.add(goal);
+            }
+        }
+        final boolean[][] boardWalls = board.getWalls();
+        this.boardWallStops = new int[4][board.size];
+        for (int dir = 0;  dir < 4;  ++dir) {
+            final boolean[] walls = boardWalls[dir];
+            final int dirIncr = board.directionIncrement[dir];
+            for (int pos = 0;  pos < board.size;  ++pos) {
+                int newPos = pos;
+                while (false == walls[newPos]) {    //NOTE: we rely on the fact that all boards are surrounded by outer walls.
+                    newPos += dirIncr;
+                }
+                this.boardWallStops[dir][pos] = newPos;
+            }
+        }
+        this.boardColumns = new int[board.size];
+        for (int pos = 0;  pos < board.size;  ++pos) {
+            this.boardColumns[pos] = pos % board.width;
+        }
+        this.stateBits = this.numRobots * board.sizeNumBits;
+    }
+
+
+
+    public final void setOptionSolutionMode(final SOLUTION_MODE mode) {
+        this.optSolutionMode = mode;
+    }
+
+    public final SOLUTION_MODE getOptionSolutionMode() {
+        return this.optSolutionMode;
+    }
+
+    public final void setOptionAllowRebounds(final boolean allowRebounds) {
+        this.optAllowRebounds = allowRebounds;
+    }
+
+    public final boolean getOptionAllowRebounds() {
+        return this.optAllowRebounds;
+    }
+
+    public final List<Board.Goal> getGoals() {
+        return Collections.unmodifiableList(this.goals);
+    }
+
+    public final long getSolutionMilliSeconds() {
+        return this.solutionMilliSeconds;
+    }
+
+    public final int getSolutionStoredStates() {
+        return this.solutionStoredStates;
+    }
+
+
+
+    /**
+     * Finds the optimal solutions of all goals.
+     *
+     * @return for each goal (in the order of <code>getGoals()</code>) the list of its solutions,
+     * sorted like the result of <code>Solver.execute()</code>. The list contains an empty solution
+     * if the goal can't be reached.
+     * @throws InterruptedException
+     */
+    public Map<Board.Goal, List<Solution>> execute() throws InterruptedException {
+        final long startExecute = System.nanoTime();
+        final Map<Board.Goal, List<Solution>> result = new LinkedHashMap<Board.Goal, List<Solution>>();
+        final List<Board.Goal> searchGoals = new ArrayList<Board.Goal>();
+        final List<Board> searchBoards = new ArrayList<Board>();
+        this.solutionStoredStates = 0;
+
+        Logger.println("***** " + this.getClass().getSimpleName() + " *****");
+        Logger.println("options: " + this.optSolutionMode + ", " + (this.optAllowRebounds ? "rebound moves" : "no rebound moves") + "; goals " + this.goals.size());
+
+        for (final Board.Goal goal : this.goals) {
+            final Board goalBoard = this.createGoalBoard(goal);
+            result.put(goal, null);     //keep the order of goals
+            if ((true == this.optAllowRebounds) && (false == goalBoard.isSolution01()) && (goal.robotNumber >= 0)) {
+                searchGoals.add(goal);
+                searchBoards.add(goalBoard);
+            }
+        }
+        if (1 < searchGoals.size()) {
+            final List<List<Solution>> solutions = this.search(searchGoals, searchBoards);
+            for (int i = 0;  i < searchGoals.size();  ++i) {
+                result.put(searchGoals.get(i), solutions.get(i));
+            }
+        }
+        for (final Map.Entry<Board.Goal, List<Solution>> entry : result.entrySet()) {
+            if (null == entry.getValue()) {
+                final Solver solver = Solver.createInstance(this.createGoalBoard(entry.getKey()), SolverIDDFS.class);
+                solver.setOptionSolutionMode(this.optSolutionMode);
+                solver.setOptionAllowRebounds(this.optAllowRebounds);
+                entry.setValue(solver.execute());
+                this.solutionStoredStates = Math.max(this.solutionStoredStates, solver.getSolutionStoredStates());
+            }
+        }
+
+        this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
+        Logger.println("time (" + this.getClass().getSimpleName() + ") : " + (this.solutionMilliSeconds / 1000d) + " seconds");
+        return result;
+    }
+
+
+
+    private Board createGoalBoard(final Board.Goal goal) {
+        final Board result = Board.createClone(this.board);
+        result.setRobots(this.board.getRobotPositions());
+        result.setGoal(goal.position);
+        return result;
+    }
+
+
+
+    //iterative deepening search of all goals, until only one goal is left.
+    //the result is null for that goal.
+    private List<List<Solution>> search(final List<Board.Goal> searchGoals, final List<Board> searchBoards) throws InterruptedException {
+        final int numGoals = searchGoals.size();
+        this.searchGoals = searchGoals;
+        this.goalMinimumMoves = new int[numGoals][];
+        this.goalsAtPosition = new int[this.numRobots * this.board.size][0];
+        this.isGoalPending = new boolean[numGoals];
+        this.goalPaths = new ArrayList<List<int[][]>>();
+        for (int g = 0;  g < numGoals;  ++g) {
+            final Board.Goal goal = searchGoals.get(g);
+            this.goalMinimumMoves[g] = this.computeMinimumMoves(goal.position);
+            final int index = goal.robotNumber * this.board.size + goal.position;
+            this.goalsAtPosition[index] = Arrays.copyOf(this.goalsAtPosition[index], this.goalsAtPosition[index].length + 1);
+            this.goalsAtPosition[index][this.goalsAtPosition[index].length - 1] = g;
+            this.isGoalPending[g] = true;
+            this.goalPaths.add(new ArrayList<int[][]>());
+        }
+        this.robotMinimumMoves = new int[this.numRobots][this.board.size];
+        this.keyState = new int[this.numRobots];
+        this.aloneQueue = new int[this.board.size];
+        this.aloneVisited = new int[this.board.size];
+        this.aloneState = new int[this.numRobots];
+        this.aloneStamp = 0;
+        this.knownStates = null;
+        this.keyRobotOrder = null;
+        this.keyMakerInt = null;
+        this.keyMakerLong = null;
+        this.updateRobotMinimumMoves();
+        this.states = new int[MAX_DEPTH + 1][];
+        for (int depth = 0;  depth < this.states.length;  ++depth) {
+            this.states[depth] = new int[this.numRobots];
+        }
+        System.arraycopy(this.board.getRobotPositions(), 0, this.states[0], 0, this.numRobots);
+
+        final long nanoStart = System.nanoTime();
+        int numGoalsToDo = numGoals;
+        for (this.depthLimit = 1;  (1 < numGoalsToDo) && (MAX_DEPTH > this.depthLimit);  ++this.depthLimit) {
+            this.dfs(1, -1, -1);
+            boolean isAnyGoalReached = false;
+            for (int g = 0;  g < numGoals;  ++g) {
+                if ((true == this.isGoalPending[g]) && (false == this.goalPaths.get(g).isEmpty())) {
+                    this.isGoalPending[g] = false;
+                    isAnyGoalReached = true;
+                    --numGoalsToDo;
+                    Logger.println("goal " + g + " (robot " + searchGoals.get(g).robotNumber + " at " + searchGoals.get(g).position +
+                            ") reached at depth=" + this.depthLimit + "   solutions=" + this.goalPaths.get(g).size());
+                }
+            }
+            if ((true == isAnyGoalReached) && (1 < numGoalsToDo)) {
+                this.updateRobotMinimumMoves();
+            }
+            Logger.println("iddfs:  finished depthLimit=" + this.depthLimit + " goalsToDo=" + numGoalsToDo +
+                    " megaBytes=" + (this.knownStates.allocatedBytes() >> 20) + " totalTime=" + (System.nanoTime() - nanoStart) / 1000000L + "ms");
+        }
+        this.releaseKnownStates();
+
+        //build the solutions from the paths of states
+        final List<List<Solution>> result = new ArrayList<List<Solution>>();
+        for (int g = 0;  g < numGoals;  ++g) {
+            final Board goalBoard = searchBoards.get(g);
+            if ((1 == numGoalsToDo) && (true == this.isGoalPending[g])) {
+                result.add(null);   //the last goal is solved by SolverIDDFS
+                continue;
+            }
+            final List<Solution> solutions = new ArrayList<Solution>();
+            for (final int[][] path : this.goalPaths.get(g)) {
+                solutions.add(this.buildSolution(goalBoard, path));
+            }
+            if (true == solutions.isEmpty()) {
+                solutions.add(new Solution(goalBoard));
+            }
+            if (SOLUTION_MODE.MINIMUM == this.optSolutionMode) {
+                Collections.sort(solutions);
+            } else if (SOLUTION_MODE.MAXIMUM == this.optSolutionMode) {
+                Collections.sort(solutions, Collections.reverseOrder());
+            }
+            result.add(solutions);
+        }
+        this.goalPaths = null;
+        return result;
+    }
+
+
+
+    private void dfs(final int depth, final int prevRobo, final int prevDirBit0) throws InterruptedException {
+        final int[] oldState = this.states[depth - 1];
+        final int height = this.depthLimit - depth + 1;
+        //lower bound of moves of the pending goals. if a goal needs all remaining moves,
+        //then only its robot may move, and the other robots don't need to move at all.
+        int minMoves = Integer.MAX_VALUE;
+        for (int robo = 0;  robo < this.numRobots;  ++robo) {
+            final int tmp = this.robotMinimumMoves[robo][oldState[robo]];
+            if (minMoves > tmp) { minMoves = tmp; }
+        }
+        if (minMoves > height) {
+            return; //useless to move any robot: can't reach any goal
+        }
+        if ((1 < height) && (Thread.interrupted())) { throw new InterruptedException(); }
+        if ((minMoves == height) && (false == this.canReachGoalAlone(oldState, height))) {
+            return; //no moves left for the helper robots, and no robot can reach its goal alone
+        }
+        final int[] newState = this.states[depth];
+        System.arraycopy(oldState, 0, newState, 0, this.numRobots);
+        for (int robo = 0;  robo < this.numRobots;  ++robo) {
+            final int oldRoboPos = oldState[robo];
+            if ((minMoves == height) && (this.robotMinimumMoves[robo][oldRoboPos] > height)) {
+                continue;   //useless to move this robot: the goals that need all remaining moves belong to other robots
+            }
+            for (int dir = 0;  dir < 4;  ++dir) {
+                if ((prevRobo == robo) && (prevDirBit0 == (dir & 1))) {
+                    continue;   //the same robot on the same axis: the state can be reached with fewer moves
+                }
+                final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);
+                if (oldRoboPos == newRoboPos) {
+                    continue;
+                }
+                newState[robo] = newRoboPos;
+                if (1 == height) {
+                    //the last move: check the goals of the robot
+                    for (final int g : this.goalsAtPosition[robo * this.board.size + newRoboPos]) {
+                        if ((true == this.isGoalPending[g]) && (this.goalPaths.get(g).size() < MAX_SOLUTIONS_PER_GOAL)) {
+                            final int[][] path = new int[depth + 1][];
+                            for (int i = 0;  i <= depth;  ++i) {
+                                path[i] = this.states[i].clone();
+                            }
+                            this.goalPaths.get(g).add(path);
+                        }
+                    }
+                } else if (true == this.addKnownState(newState, height)) {
+                    this.dfs(depth + 1, robo, (dir & 1));
+                }
+            }
+            newState[robo] = oldRoboPos;
+        }
+    }
+
+
+
+    //true if a robot that needs all remaining moves can reach one of its pending goals
+    //while the other robots stay where they are. see SolverIDDFS.canReachGoalAlone
+    private boolean canReachGoalAlone(final int[] state, final int maxMoves) {
+        for (int robo = 0;  robo < this.numRobots;  ++robo) {
+            if ((this.robotMinimumMoves[robo][state[robo]] == maxMoves) && (true == this.canReachGoalAlone(state, robo, maxMoves))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean canReachGoalAlone(final int[] state, final int robo, final int maxMoves) {
+        if (0 == ++this.aloneStamp) {
+            Arrays.fill(this.aloneVisited, 0);
+            this.aloneStamp = 1;
+        }
+        final int stamp = this.aloneStamp;
+        final int[] queue = this.aloneQueue;
+        final int[] minMoves = this.robotMinimumMoves[robo];
+        final int[] tmpState = this.aloneState;
+        System.arraycopy(state, 0, tmpState, 0, state.length);
+        this.aloneVisited[state[robo]] = stamp;
+        queue[0] = state[robo];
+        int head = 0, tail = 1;
+        for (int moves = 1;  (moves <= maxMoves) && (head < tail);  ++moves) {
+            final int movesLeft = maxMoves - moves;
+            for (final int levelEnd = tail;  head < levelEnd;  ) {
+                final int oldRoboPos = queue[head++];
+                tmpState[robo] = oldRoboPos;
+                for (int dir = 0;  dir < 4;  ++dir) {
+                    final int newRoboPos = this.moveRobot(tmpState, oldRoboPos, dir);
+                    if ((0 == minMoves[newRoboPos]) && (true == this.isGoalPendingAt(robo, newRoboPos))) {
+                        return true;
+                    }
+                    if ((stamp != this.aloneVisited[newRoboPos]) && (minMoves[newRoboPos] <= movesLeft)) {
+                        this.aloneVisited[newRoboPos] = stamp;
+                        queue[tail++] = newRoboPos;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isGoalPendingAt(final int robo, final int position) {
+        for (final int g : this.goalsAtPosition[robo * this.board.size + position]) {
+            if (true == this.isGoalPending[g]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    //the minimum of goalMinimumMoves of all pending goals, for each robot and position.
+    //the robots that have no pending goals are free.
+    private void updateRobotMinimumMoves() {
+        int numFreeRobots = 0;
+        final int[] freeRobots = new int[this.numRobots];
+        for (int robo = 0;  robo < this.numRobots;  ++robo) {
+            final int[] minMoves = this.robotMinimumMoves[robo];
+            Arrays.fill(minMoves, Integer.MAX_VALUE);
+            boolean isFree = true;
+            for (int g = 0;  g < this.isGoalPending.length;  ++g) {
+                if ((true == this.isGoalPending[g]) && (this.searchGoals.get(g).robotNumber == robo)) {
+                    isFree = false;
+                    final int[] goalMinMoves = this.goalMinimumMoves[g];
+                    for (int pos = 0;  pos < minMoves.length;  ++pos) {
+                        minMoves[pos] = Math.min(minMoves[pos], goalMinMoves[pos]);
+                    }
+                }
+            }
+            if (true == isFree) {
+                freeRobots[numFreeRobots++] = robo;
+            }
+        }
+        this.freeRobots = Arrays.copyOf(freeRobots, numFreeRobots);
+        this.updateKnownStates();
+    }
+
+
+
+    //creates the map of known states. if all pending goals belong to the same robot, then the keys
+    //can be made like those of SolverIDDFS, and its map is used. that map replaces the previous
+    //one, because the keys are not compatible.
+    private void updateKnownStates() {
+        int pendingRobot = -1;  //-1 = no pending goal yet, -2 = goals of different robots
+        for (int g = 0;  g < this.isGoalPending.length;  ++g) {
+            if (true == this.isGoalPending[g]) {
+                final int goalRobot = this.searchGoals.get(g).robotNumber;
+                pendingRobot = ((-1 == pendingRobot) || (goalRobot == pendingRobot) ? goalRobot : -2);
+            }
+        }
+        if ((null != this.knownStates) && ((null != this.keyRobotOrder) || (pendingRobot < 0))) {
+            return; //keep the current map
+        }
+        if (pendingRobot < 0) {
+            this.knownStates = new KeyDepthMapTrieGeneric(Math.max(12, this.stateBits));
+            return;
+        }
+        this.releaseKnownStates();
+        this.keyRobotOrder = new int[this.numRobots];
+        for (int robo = 0, i = 0;  robo < this.numRobots;  ++robo) {
+            if (robo != pendingRobot) {
+                this.keyRobotOrder[i++] = robo;
+            }
+        }
+        this.keyRobotOrder[this.numRobots - 1] = pendingRobot;  //goal robot is always the last one, like swapGoalLast
+        if (this.stateBits <= 32) {
+            this.keyMakerInt = KeyMakerInt.createInstance(this.numRobots, this.board.sizeNumBits, false);
+        } else {
+            this.keyMakerLong = KeyMakerLong.createInstance(this.numRobots, this.board.sizeNumBits, false);
+        }
+        this.knownStates = KeyDepthMapFactory.newInstance(this.board);
+        Logger.println("knownStates: " + this.knownStates.getClass().getSimpleName() + " for the goals of robot " + pendingRobot);
+    }
+
+    private void releaseKnownStates() {
+        if (null != this.knownStates) {
+            this.solutionStoredStates = Math.max(this.solutionStoredStates, this.knownStates.size());
+            this.knownStates.release();
+            this.knownStates = null;    //allow garbage collection
+        }
+    }
+
+
+
+    //lower bound of moves to reach the goal position: the robot may stop anywhere on its way.
+    private int[] computeMinimumMoves(final int goalPosition) {
+        final int[] result = new int[this.board.size];
+        final boolean[] posToDo = new boolean[this.board.size];
+        final boolean[][] boardWalls = this.board.getWalls();
+        Arrays.fill(result, Integer.MAX_VALUE);
+        result[goalPosition] = 0;
+        posToDo[goalPosition] = true;
+        for (boolean done = false;  false == done;  ) {
+            done = true;
+            for (int pos = 0;  pos < posToDo.length;  ++pos) {
+                if (true == posToDo[pos]) {
+                    posToDo[pos] = false;
+                    final int depth = result[pos] + 1;
+                    int dir = -1;
+                    for (int dirIncr : this.board.directionIncrement) {
+                        int newPos = pos;
+                        final boolean[] walls = boardWalls[++dir];
+                        while (false == walls[newPos]) {    //move the robot until it reaches a wall.
+                            newPos += dirIncr;              //NOTE: we rely on the fact that all boards are surrounded by outer walls.
+                            if (depth < result[newPos]) {
+                                result[newPos] = depth;
+                                posToDo[newPos] = true;
+                                done = false;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+
+
+    //move the robot until it reaches a wall or another robot: see Solver.moveRobot
+    private int moveRobot(final int[] state, final int oldPos, final int dir) {
+        int newPos = this.boardWallStops[dir][oldPos];
+        switch (dir) {
+        case Board.NORTH: {
+            final int column = this.boardColumns[oldPos];
+            for (final int pos : state) {
+                if ((pos < oldPos) && (pos >= newPos) && (this.boardColumns[pos] == column)) { newPos = pos + this.board.width; }
+            }
+            break;
+        }
+        case Board.EAST:
+            for (final int pos : state) {   //the positions between oldPos and the wall are in the same row
+                if ((pos > oldPos) && (pos <= newPos)) { newPos = pos - 1; }
+            }
+            break;
+        case Board.SOUTH: {
+            final int column = this.boardColumns[oldPos];
+            for (final int pos : state) {
+                if ((pos > oldPos) && (pos <= newPos) && (this.boardColumns[pos] == column)) { newPos = pos - this.board.width; }
+            }
+            break;
+        }
+        default:    //Board.WEST
+            for (final int pos : state) {
+                if ((pos < oldPos) && (pos >= newPos)) { newPos = pos + 1; }
+            }
+            break;
+        }
+        return newPos;
+    }
+
+
+
+    private Solution buildSolution(final Board goalBoard, final int[][] statesPath) {
+        Solution result = new Solution(goalBoard);
+        for (int i = 0;  i < statesPath.length - 1;  ++i) {
+            result.add(new Move(goalBoard, statesPath[i], statesPath[i + 1], i));
+        }
+        return result.finish();
+    }
+
+
+
+    //the key of the state keeps the identity of the robots that have pending goals,
+    //and the free robots are sorted by position. the value is the number of remaining moves.
+    private boolean addKnownState(final int[] state, final int height) {
+        final int[] keyState = this.keyState;
+        if (null != this.keyRobotOrder) {
+            for (int i = 0;  i < keyState.length;  ++i) {
+                keyState[i] = state[this.keyRobotOrder[i]];
+            }
+            return ((null != this.keyMakerInt) ? this.knownStates.putIfGreater(this.keyMakerInt.run(keyState), height) : this.knownStates.putIfGreater(this.keyMakerLong.run(keyState), height));
+        }
+        System.arraycopy(state, 0, keyState, 0, state.length);
+        final int[] freeRobots = this.freeRobots;
+        for (int i = 1;  i < freeRobots.length;  ++i) {     //insertion sort
+            final int pos = keyState[freeRobots[i]];
+            int j = i;
+            for ( ;  (j > 0) && (keyState[freeRobots[j - 1]] > pos);  --j) {
+                keyState[freeRobots[j]] = keyState[freeRobots[j - 1]];
+            }
+            keyState[freeRobots[j]] = pos;
+        }
+        long key = 0;
+        for (int robo = keyState.length - 1;  robo >= 0;  --robo) {
+            key = (key << this.board.sizeNumBits) | keyState[robo];
+        }
+        return ((this.stateBits <= 32) ? this.knownStates.putIfGreater((int)key, height) : this.knownStates.putIfGreater(key, height));
+    }
+}
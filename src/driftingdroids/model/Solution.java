@@ -19,6 +19,7 @@ package driftingdroids.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Formatter;
 import java.util.HashSet;
@@ -57,6 +58,15 @@ public class Solution implements Comparable<Solution> {
         return this.movesList.size();
     }
     
+    List<Move> getMoves() {
+        return Collections.unmodifiableList(this.movesList);
+    }
+    
+    // true if finish() has set the attributes used for sorting of solutions
+    boolean isFinished() {
+        return (0 != this.numColors);
+    }
+    
     public Set<Integer> getRobotsMoved() {
         final TreeSet<Integer> result = new TreeSet<Integer>(); //sorted set
         for (Move move : this.movesList) {
@@ -0,0 +1,337 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import driftingdroids.model.Solver.SOLUTION_MODE;
+
+
+
+/**
+ * This class stores the results of <code>Solver.execute()</code>, so that a board
+ * configuration that has been solved before doesn't need to be searched again.
+ * <p>
+ * The key of an entry is the key of the board configuration in its canonical orientation
+ * (see <code>CanonicalBoard</code>) plus the solver class and its options, so one entry serves
+ * all four rotations of a board. The value is a compact encoding of the moves of all solutions
+ * (one byte per move: robot number and direction on the canonical board). A hit replays the
+ * moves on the board to rebuild the list of solutions.
+ * <p>
+ * There are two tiers: the recently used entries are kept in memory (LRU) and all
+ * entries are appended to a log file on disk. An index file stores the hash of each
+ * key and the offset of its record in the log file. The index is memory-mapped
+ * and loaded when the cache is opened. Different keys may have the same hash, so a
+ * lookup compares the key stored in each of the records of the hash.
+ * <p>
+ * The methods of this class are thread-safe.
+ */
+public class SolutionCache implements Closeable {
+
+    private static final String LOG_FILE_NAME = "solutions.log";
+    private static final String INDEX_FILE_NAME = "solutions.idx";
+    private static final int INDEX_ENTRY_BYTES = 16;    //long hash, long offset
+
+    private final FileChannel logChannel, indexChannel;
+    private final Map<Long, long[]> diskIndex;  //key=hash of key, value=offsets in log file (of all keys with this hash)
+    private final LinkedHashMap<String, byte[]> memoryCache;
+    private long logSize;
+    private int numDiskEntries = 0;
+
+    private long numHits = 0, numMisses = 0;
+
+
+
+    /**
+     * Opens (or creates) the cache files in the specified directory.
+     *
+     * @param directory the directory of the cache files
+     * @param memoryEntries maximum number of entries that are kept in memory
+     * @throws IOException
+     */
+    public SolutionCache(final File directory, final int memoryEntries) throws IOException {
+        if ((false == directory.isDirectory()) && (false == directory.mkdirs())) {
+            throw new IOException("can't create directory " + directory);
+        }
+        this.memoryCache = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return (this.size() > memoryEntries);
+            }
+        };
+        this.logChannel = new RandomAccessFile(new File(directory, LOG_FILE_NAME), "rw").getChannel();
+        this.indexChannel = new RandomAccessFile(new File(directory, INDEX_FILE_NAME), "rw").getChannel();
+        this.logSize = this.logChannel.size();
+        //load the index. drop the entries of incomplete records (the log is written before the index).
+        this.diskIndex = new HashMap<Long, long[]>();
+        final long numIndexEntries = this.indexChannel.size() / INDEX_ENTRY_BYTES;
+        if (0 < numIndexEntries) {
+            final MappedByteBuffer indexBuffer = this.indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, numIndexEntries * INDEX_ENTRY_BYTES);
+            for (long i = 0;  i < numIndexEntries;  ++i) {
+                final long hash = indexBuffer.getLong();
+                final long offset = indexBuffer.getLong();
+                if ((0 <= offset) && (offset < this.logSize)) {
+                    this.addDiskIndex(hash, offset);
+                }
+            }
+        }
+        this.indexChannel.position(numIndexEntries * INDEX_ENTRY_BYTES);
+        Logger.println("SolutionCache: opened " + directory + "  entries=" + this.numDiskEntries + "  logBytes=" + this.logSize);
+    }
+
+
+
+    /**
+     * Gets the solutions from the cache or, if they are not in the cache, runs the solver
+     * and stores its result in the cache.
+     *
+     * @param solver the solver, with its board and options
+     * @return the solutions, sorted as returned by <code>Solver.execute()</code>
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public List<Solution> execute(final Solver solver) throws InterruptedException, IOException {
+        List<Solution> result = this.get(solver);
+        if (null == result) {
+            result = solver.execute();
+            if (false == solver.isStopRequested()) {   //don't store the result of a search that has been stopped
+                this.put(solver, result);
+            }
+        }
+        return result;
+    }
+
+
+
+    /**
+     * @param solver the solver, with its board and options
+     * @return the cached solutions, rebuilt for the board of the solver, or <code>null</code> if there is no entry
+     * @throws IOException
+     */
+    public synchronized List<Solution> get(final Solver solver) throws IOException {
+        final CanonicalBoard canonicalBoard = CanonicalBoard.create(solver.board);
+        final String key = createKey(solver, canonicalBoard);
+        byte[] value = this.memoryCache.get(key);
+        if (null == value) {
+            value = this.readLog(key);
+            if (null != value) {
+                this.memoryCache.put(key, value);
+            }
+        }
+        if (null == value) {
+            ++this.numMisses;
+            return null;
+        }
+        ++this.numHits;
+        final List<Solution> result = decodeSolutions(canonicalBoard, value);
+        //the order of equal solutions depends on the orientation of the board
+        if (SOLUTION_MODE.MINIMUM == solver.getOptionSolutionMode()) {
+            Collections.sort(result);
+        } else if (SOLUTION_MODE.MAXIMUM == solver.getOptionSolutionMode()) {
+            Collections.sort(result, Collections.reverseOrder());
+        }
+        return result;
+    }
+
+
+
+    /**
+     * Stores the solutions in the cache.
+     *
+     * @param solver the solver, with its board and options
+     * @param solutions the result of <code>solver.execute()</code>
+     * @throws IOException
+     */
+    public synchronized void put(final Solver solver, final List<Solution> solutions) throws IOException {
+        final CanonicalBoard canonicalBoard = CanonicalBoard.create(solver.board);
+        final String key = createKey(solver, canonicalBoard);
+        final byte[] value = encodeSolutions(canonicalBoard, solutions);
+        this.memoryCache.put(key, value);
+        if (null != this.readLog(key)) {
+            return;     //already on disk
+        }
+        //append the record to the log, then its entry to the index
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(4 + keyBytes.length + 4 + value.length);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(value.length).put(value).flip();
+        final long offset = this.logSize;
+        while (record.hasRemaining()) {
+            this.logChannel.write(record, this.logSize + record.position());
+        }
+        this.logSize += record.limit();
+        final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        indexEntry.putLong(hashKey(key)).putLong(offset).flip();
+        while (indexEntry.hasRemaining()) {
+            this.indexChannel.write(indexEntry);
+        }
+        this.addDiskIndex(hashKey(key), offset);
+    }
+
+
+
+    public synchronized int size() {
+        return this.numDiskEntries;
+    }
+
+    public synchronized long getNumHits() {
+        return this.numHits;
+    }
+
+    public synchronized long getNumMisses() {
+        return this.numMisses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.logChannel.close();
+        this.indexChannel.close();
+    }
+
+
+
+    private void addDiskIndex(final long hash, final long offset) {
+        final long[] offsets = this.diskIndex.get(Long.valueOf(hash));
+        if (null == offsets) {
+            this.diskIndex.put(Long.valueOf(hash), new long[] { offset });
+        } else {
+            final long[] newOffsets = Arrays.copyOf(offsets, offsets.length + 1);
+            newOffsets[offsets.length] = offset;
+            this.diskIndex.put(Long.valueOf(hash), newOffsets);
+        }
+        ++this.numDiskEntries;
+    }
+
+    //read the value of the key from the log file. returns null if the key is not in the log.
+    private byte[] readLog(final String key) throws IOException {
+        final long[] offsets = this.diskIndex.get(Long.valueOf(hashKey(key)));
+        if (null == offsets) {
+            return null;
+        }
+        for (final long offset : offsets) {
+            final byte[] value = this.readRecord(key, offset);
+            if (null != value) {
+                return value;
+            }
+        }
+        return null;    //collision of the hashes of two keys
+    }
+
+    //read the value of the record at the offset. returns null if the record has a different key.
+    private byte[] readRecord(final String key, final long offset) throws IOException {
+        long position = offset;
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        this.readFully(lengthBuffer, position);
+        final byte[] keyBytes = new byte[lengthBuffer.getInt(0)];
+        position += 4;
+        this.readFully(ByteBuffer.wrap(keyBytes), position);
+        if (false == key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+            return null;    //collision of the hashes of two keys
+        }
+        position += keyBytes.length;
+        lengthBuffer.clear();
+        this.readFully(lengthBuffer, position);
+        final byte[] value = new byte[lengthBuffer.getInt(0)];
+        position += 4;
+        this.readFully(ByteBuffer.wrap(value), position);
+        return value;
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.logChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of solution cache log");
+            }
+        }
+    }
+
+
+
+    /**
+     * Creates the key of the canonical board configuration and the solver options.
+     *
+     * @param solver the solver, with its options
+     * @param canonicalBoard the canonical form of the board of the solver
+     * @return the key string
+     */
+    static String createKey(final Solver solver, final CanonicalBoard canonicalBoard) {
+        return canonicalBoard.getKey() + "|" + solver.getOptionsKey();
+    }
+
+    //64-bit FNV-1a hash of the key
+    private static long hashKey(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (0xff & b);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+
+    //value: number of solutions; for each solution: flags (1 = finished), number of moves, moves (robot << 2 | direction)
+    static byte[] encodeSolutions(final CanonicalBoard canonicalBoard, final List<Solution> solutions) {
+        int numBytes = 2;
+        for (final Solution solution : solutions) {
+            numBytes += 3 + solution.size();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(numBytes);
+        buffer.putShort((short)solutions.size());
+        for (final Solution solution : solutions) {
+            buffer.put((byte)(solution.isFinished() ? 1 : 0));
+            buffer.putShort((short)solution.size());
+            for (final Move move : solution.getMoves()) {
+                buffer.put((byte)((move.robotNumber << 2) | canonicalBoard.toCanonicalDirection(move.direction)));
+            }
+        }
+        return buffer.array();
+    }
+
+    //replay the moves on the original board
+    static List<Solution> decodeSolutions(final CanonicalBoard canonicalBoard, final byte[] value) {
+        final ByteBuffer buffer = ByteBuffer.wrap(value);
+        final int numSolutions = buffer.getShort();
+        final List<Solution> result = new ArrayList<Solution>(numSolutions);
+        for (int i = 0;  i < numSolutions;  ++i) {
+            final boolean isFinished = (0 != buffer.get());
+            final int[] robotDirections = new int[buffer.getShort() * 2];
+            for (int j = 0;  j < robotDirections.length;  j += 2) {
+                final int robotDir = buffer.get();
+                robotDirections[j] = (robotDir >>> 2);
+                robotDirections[j + 1] = canonicalBoard.toOriginalDirection(robotDir & 3);
+            }
+            result.add(CanonicalBoard.replayMoves(canonicalBoard.getBoard(), robotDirections, isFinished));
+        }
+        return result;
+    }
+}
@@ -20,6 +20,8 @@ package driftingdroids.model;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 
@@ -47,19 +49,63 @@ public abstract class Solver {
     protected final int boardSizeBitMask;
     protected final boolean isBoardStateInt32;
     protected final boolean isBoardGoalWildcard;
+    protected final int[][] boardWallStops;     //[direction][position] = position where the robot stops at a wall
+    private final int[] boardColumns;           //[position] = column
     
     protected SOLUTION_MODE optSolutionMode = SOLUTION_MODE.MINIMUM;
     protected boolean optAllowRebounds = true;
+    protected long optMemoryLimit = 0;      //0 = no limit
     
     protected List<Solution> lastResultSolutions = null;
     protected long solutionMilliSeconds = 0;
     protected int solutionStoredStates = 0;
     protected int solutionMemoryMegabytes = 0;
+    protected long solutionForgottenStates = 0;
     
+    private List<SolverListener> listeners = new CopyOnWriteArrayList<SolverListener>();
+    private AtomicBoolean stopRequested = new AtomicBoolean(false);
+    private Solver eventSource = this;     //the solver that is known to the listeners
     
     
+    
+    private static Class<? extends Solver> defaultClazz = SolverIDDFS.class;
+    
+    
+    
+    /**
+     * Set the default implementation class of Solver that is used by <code>createInstance(Board)</code>.
+     * 
+     * @param clazz the implementation class of Solver
+     */
+    public static void setDefaultClass(final Class<? extends Solver> clazz) {
+        defaultClazz = clazz;
+    }
+    
     public static Solver createInstance(final Board board) {
-        return new SolverIDDFS(board);
+        return createInstance(board, defaultClazz);
+    }
+    
+    /**
+     * Creates a new instance of Solver.
+     * 
+     * @param board the board that is to be solved
+     * @param clazz the implementation class of Solver
+     * @return a new instance of Solver
+     */
+    public static Solver createInstance(final Board board, final Class<? extends Solver> clazz) {
+        if (SolverIDDFS.class.equals(clazz)) {
+            return new SolverIDDFS(board);
+        } else if (SolverParallelIDDFS.class.equals(clazz)) {
+            return new SolverParallelIDDFS(board);
+        } else if (SolverBFS.class.equals(clazz)) {
+            return new SolverBFS(board);
+        } else if (SolverBFSExternal.class.equals(clazz)) {
+            return new SolverBFSExternal(board);
+        } else if (SolverAnytime.class.equals(clazz)) {
+            return new SolverAnytime(board);
+        } else {
+            throw new IllegalArgumentException("unknown Solver class: " + clazz);
+        }
     }
     
     
@@ -76,6 +122,63 @@ public abstract class Solver {
         this.boardSizeBitMask = bitMask;
         this.isBoardStateInt32 = (this.board.sizeNumBits * this.board.getNumRobots() <= 32);
         this.isBoardGoalWildcard = ((null != this.board.getGoal()) && (this.board.getGoal().robotNumber < 0));
+        this.boardWallStops = new int[4][this.board.size];
+        for (int dir = 0;  dir < 4;  ++dir) {
+            final boolean[] walls = this.boardWalls[dir];
+            final int dirIncr = this.board.directionIncrement[dir];
+            for (int pos = 0;  pos < this.board.size;  ++pos) {
+                int newPos = pos;
+                while (false == walls[newPos]) {    //NOTE: we rely on the fact that all boards are surrounded by outer walls.
+                    newPos += dirIncr;
+                }
+                this.boardWallStops[dir][pos] = newPos;
+            }
+        }
+        this.boardColumns = new int[this.board.size];
+        for (int pos = 0;  pos < this.board.size;  ++pos) {
+            this.boardColumns[pos] = pos % this.board.width;
+        }
+    }
+
+    /**
+     * Moves a robot until it reaches a wall or another robot. Instead of walking through the
+     * board cell by cell, it looks up the wall stop position and then checks the other robots:
+     * the nearest robot that is on the way between the old position and the wall stops the move.
+     * 
+     * @param state the positions of all robots (including the moving robot)
+     * @param oldPos the position of the moving robot
+     * @param dir the direction of the move
+     * @return the new position of the robot (equal to oldPos if it can't move)
+     */
+    protected final int moveRobot(final int[] state, final int oldPos, final int dir) {
+        int newPos = this.boardWallStops[dir][oldPos];
+        switch (dir) {
+        case Board.NORTH: {
+            final int column = this.boardColumns[oldPos];
+            for (final int pos : state) {
+                if ((pos < oldPos) && (pos >= newPos) && (this.boardColumns[pos] == column)) { newPos = pos + this.board.width; }
+            }
+            break;
+        }
+        case Board.EAST:
+            for (final int pos : state) {   //the positions between oldPos and the wall are in the same row
+                if ((pos > oldPos) && (pos <= newPos)) { newPos = pos - 1; }
+            }
+            break;
+        case Board.SOUTH: {
+            final int column = this.boardColumns[oldPos];
+            for (final int pos : state) {
+                if ((pos > oldPos) && (pos <= newPos) && (this.boardColumns[pos] == column)) { newPos = pos - this.board.width; }
+            }
+            break;
+        }
+        default:    //Board.WEST
+            for (final int pos : state) {
+                if ((pos < oldPos) && (pos >= newPos)) { newPos = pos + 1; }
+            }
+            break;
+        }
+        return newPos;
     }
 
     protected final String stateString(final int[] state) {
@@ -114,6 +217,76 @@ public abstract class Solver {
         return this.lastResultSolutions;
     }
     
+    public final void addListener(final SolverListener listener) {
+        this.listeners.add(listener);
+    }
+    
+    public final void removeListener(final SolverListener listener) {
+        this.listeners.remove(listener);
+    }
+    
+    /**
+     * Requests the running search to stop as soon as possible.
+     * <code>execute()</code> then returns the solutions that have been found so far.
+     * This method may be called by any thread, for example by a <code>SolverListener</code>.
+     */
+    public final void stopSearch() {
+        this.stopRequested.set(true);
+    }
+    
+    public final boolean isStopRequested() {
+        return this.stopRequested.get();
+    }
+    
+    /**
+     * Lets the other solver, which does (a part of) the search of this solver, share
+     * the listeners and the stop request of this solver. The other solver doesn't send
+     * the event <code>searchFinished</code>, because this solver sends it.
+     * 
+     * @param delegate the solver that works for this solver
+     */
+    final void shareListenersWith(final Solver delegate) {
+        delegate.listeners = this.listeners;
+        delegate.stopRequested = this.stopRequested;
+        delegate.eventSource = this.eventSource;
+    }
+    
+    /**
+     * Lets the other solver, which does (a part of) the search of this solver, share
+     * the stop request of this solver, but not the listeners.
+     * 
+     * @param delegate the solver that works for this solver
+     */
+    final void shareStopRequestWith(final Solver delegate) {
+        delegate.stopRequested = this.stopRequested;
+    }
+    
+    protected final void fireDepthStarted(final int depth) {
+        for (final SolverListener listener : this.listeners) {
+            listener.depthStarted(this.eventSource, depth);
+        }
+    }
+    
+    protected final void fireDepthFinished(final int depth, final int storedStates, final long elapsedMilliSeconds) {
+        for (final SolverListener listener : this.listeners) {
+            listener.depthFinished(this.eventSource, depth, storedStates, elapsedMilliSeconds);
+        }
+    }
+    
+    protected final void fireSolutionFound(final Solution solution) {
+        for (final SolverListener listener : this.listeners) {
+            listener.solutionFound(this.eventSource, solution);
+        }
+    }
+    
+    protected final void fireSearchFinished() {
+        if (this == this.eventSource) {
+            for (final SolverListener listener : this.listeners) {
+                listener.searchFinished(this, this.lastResultSolutions);
+            }
+        }
+    }
+    
     public final void setOptionSolutionMode(SOLUTION_MODE mode) {
         this.optSolutionMode = mode;
     }
@@ -130,11 +303,38 @@ public abstract class Solver {
         return this.optAllowRebounds;
     }
     
+    /**
+     * Sets the maximum number of bytes that the solver may use to store the known states.
+     * Before the table would grow beyond the limit, the solver continues with a table of fixed size that forgets
+     * some of the known states (right from the start, if the limit is smaller than an empty table).
+     * The search takes more time, but it finds solutions of the same length.
+     * (it may find some more alternative solutions, because fewer duplicate branches are skipped)
+     * This option is used by <code>SolverIDDFS</code> (not by the parallel and BFS solvers).
+     * 
+     * @param bytes the limit in bytes, or 0 for no limit
+     */
+    public final void setOptionMemoryLimit(long bytes) {
+        this.optMemoryLimit = bytes;
+    }
+    
+    public final long getOptionMemoryLimit() {
+        return this.optMemoryLimit;
+    }
+    
     public final String getOptionsAsString() {
         return this.optSolutionMode.getName() + " number of robots moved; "
                 + (this.optAllowRebounds ? "with" : "no") + " rebound moves";
     }
     
+    /**
+     * @return a string that identifies the solver class and all options that may change the result
+     */
+    public final String getOptionsKey() {
+        return this.getClass().getSimpleName() + "|" + this.optSolutionMode.getName()
+                + "|" + (this.optAllowRebounds ? "rebounds" : "norebounds")
+                + (USE_SLOW_SEARCH_MORE_SOLUTIONS ? "|slow" : "");
+    }
+    
     public final long getSolutionMilliSeconds() {
         return this.solutionMilliSeconds;
     }
@@ -147,10 +347,21 @@ public abstract class Solver {
         return this.solutionMemoryMegabytes;
     }
     
+    /**
+     * @return number of known states that have been forgotten because the memory limit was reached,
+     * or 0 if the search didn't reach the limit (see <code>setOptionMemoryLimit</code>)
+     */
+    public final long getSolutionForgottenStates() {
+        return this.solutionForgottenStates;
+    }
+    
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
         s.append("storedStates=").append(this.solutionStoredStates);
+        if (0 < this.solutionForgottenStates) {
+            s.append(", forgottenStates=").append(this.solutionForgottenStates);
+        }
         s.append(", time=").append(this.solutionMilliSeconds / 1000d).append(" seconds");
         return s.toString();
     }
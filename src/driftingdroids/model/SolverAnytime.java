@@ -0,0 +1,553 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+
+
+/**
+ * This is an "anytime" solver: it finds a valid solution quickly and then improves it
+ * until the solution is proven to be optimal, or until the deadline has passed.
+ * <p>
+ * First a beam search looks for a short (but possibly not optimal) solution. At each level
+ * of the beam search, the shortest path of the goal robot alone to the goal, with the other
+ * robots standing still, completes the path to a solution. As long as there is no solution,
+ * the shortest path of the goal robot and one helper robot completes the best state of each
+ * level, and the beam is widened if it has found nothing. This seed search uses at most a
+ * quarter of the deadline. Then <code>SolverIDDFS</code> runs the exact search. Each completed
+ * depth limit of the iterative deepening raises the proven lower bound. The search ends as soon
+ * as the best solution is not longer than the lower bound.
+ * <p>
+ * Each new best solution is sent to the listeners by <code>SolverListener.solutionFound</code>.
+ * If the deadline passes before any solution has been found, then the search goes on until
+ * the first solution, so that <code>execute()</code> doesn't return without a solution.
+ * The beam search is skipped for the option "no rebound moves" and for the special rule
+ * of <code>Board.isSolution01()</code>.
+ */
+public class SolverAnytime extends Solver {
+
+    private static final int BEAM_WIDTH = 256;
+    private static final int MAX_BEAM_WIDTH = 16384;
+    private static final int MAX_BEAM_DEPTH = 40;
+    private static final int SEED_DEADLINE_DIVISOR = 4;    //the seed search may use a quarter of the deadline
+
+    private long optDeadlineMilliSeconds = 0;  //0 = no deadline
+
+    private final int numRobots;
+    private final int[] directionIncrement;
+    private final boolean[] isRobot;
+    private final int[] minimumMovesToGoal;
+    private final int[] soloQueue, soloPrev;
+    private int[] pairQueue, pairPrev;     //allocated by getPairPath
+
+    private volatile Solution bestSolution = null;
+    private volatile int provenLowerBound = 0;
+    private volatile boolean exactSolutionFound = false;
+    private boolean isDeadlinePassed = false;   //guarded by deadlineLock
+    private final Object deadlineLock = new Object();
+
+
+
+    protected SolverAnytime(final Board board) {
+        super(board);
+        this.numRobots = board.getNumRobots();
+        this.directionIncrement = board.directionIncrement;
+        this.isRobot = new boolean[board.size];
+        this.minimumMovesToGoal = new int[board.size];
+        this.soloQueue = new int[board.size];
+        this.soloPrev = new int[board.size];
+    }
+
+
+
+    /**
+     * Sets the deadline of the search. When it has passed, <code>execute()</code> returns
+     * the best solution found so far, which may not be optimal.
+     *
+     * @param milliSeconds time after the start of <code>execute()</code>; 0 = no deadline
+     */
+    public final void setOptionDeadline(final long milliSeconds) {
+        this.optDeadlineMilliSeconds = Math.max(0, milliSeconds);
+    }
+
+    public final long getOptionDeadline() {
+        return this.optDeadlineMilliSeconds;
+    }
+
+    /**
+     * Gets the best (shortest) solution that has been found so far.
+     * This method may be called by any thread while the search is running.
+     *
+     * @return the best solution so far, or <code>null</code> if no solution has been found yet
+     */
+    public final Solution getBestSolution() {
+        return this.bestSolution;
+    }
+
+    /**
+     * Gets the proven lower bound: there is no solution with fewer moves.
+     * It's one more than the last depth limit that the iterative deepening has completed.
+     * This method may be called by any thread while the search is running.
+     *
+     * @return minimum number of moves of any solution
+     */
+    public final int getProvenLowerBound() {
+        return this.provenLowerBound;
+    }
+
+    /**
+     * @return <code>true</code> if the best solution so far is proven to be optimal
+     */
+    public final boolean isBestSolutionOptimal() {
+        final Solution best = this.bestSolution;
+        return (null != best) && (best.size() <= this.provenLowerBound);
+    }
+
+
+
+    @Override
+    public List<Solution> execute() throws InterruptedException {
+        final long startExecute = System.nanoTime();
+        this.lastResultSolutions = new ArrayList<Solution>();
+        this.bestSolution = null;
+        this.provenLowerBound = 0;
+        this.exactSolutionFound = false;
+        this.isDeadlinePassed = false;
+
+        Logger.println("***** " + this.getClass().getSimpleName() + " *****");
+        Logger.println("options: " + this.getOptionsAsString() + "; deadline " + this.optDeadlineMilliSeconds + "ms");
+
+        final Timer deadlineTimer = (0 < this.optDeadlineMilliSeconds ? new Timer(true) : null);
+        if (null != deadlineTimer) {
+            deadlineTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    final SolverAnytime outer = SolverAnytime.this;
+                    synchronized (outer.deadlineLock) {
+                        outer.isDeadlinePassed = true;
+                        if (null != outer.bestSolution) {
+                            Logger.println("anytime: deadline has passed");
+                            outer.stopSearch();
+                        } else {
+                            Logger.println("anytime: deadline has passed, but there is no solution yet: search the first one");
+                        }
+                    }
+                }
+            }, this.optDeadlineMilliSeconds);
+        }
+        try {
+            if (null == this.board.getGoal()) {
+                Logger.println("no goal is set - nothing to solve!");
+            } else {
+                if ((true == this.optAllowRebounds) && (false == this.board.isSolution01())) {
+                    this.seedSearch(startExecute);
+                }
+                this.exactSearch();
+            }
+        } finally {
+            if (null != deadlineTimer) {
+                deadlineTimer.cancel();
+            }
+        }
+        if ((true == this.lastResultSolutions.isEmpty()) && (null != this.bestSolution)) {
+            this.lastResultSolutions.add(this.bestSolution);
+        }
+        Logger.println("anytime: provenLowerBound=" + this.provenLowerBound + " isOptimal=" + this.isBestSolutionOptimal());
+        this.sortSolutions();
+        this.fireSearchFinished();
+
+        this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
+        return this.lastResultSolutions;
+    }
+
+
+
+    private void exactSearch() throws InterruptedException {
+        final SolverIDDFS solver = new SolverIDDFS(this.board);
+        solver.setOptionSolutionMode(this.optSolutionMode);
+        solver.setOptionAllowRebounds(this.optAllowRebounds);
+        solver.setOptionMemoryLimit(this.optMemoryLimit);
+        this.shareStopRequestWith(solver);
+        solver.addListener(new SolverListener() {
+            @Override
+            public void depthStarted(final Solver source, final int depth) {
+                SolverAnytime.this.fireDepthStarted(depth);
+            }
+            @Override
+            public void depthFinished(final Solver source, final int depth, final int storedStates, final long elapsedMilliSeconds) {
+                final SolverAnytime outer = SolverAnytime.this;
+                //a depth that has been stopped is not complete
+                if ((false == outer.isStopRequested()) && (false == outer.exactSolutionFound)) {
+                    outer.provenLowerBound = depth + 1;
+                }
+                outer.fireDepthFinished(depth, storedStates, elapsedMilliSeconds);
+                if (true == outer.isBestSolutionOptimal()) {
+                    Logger.println("anytime: best solution is optimal, stop the search");
+                    outer.stopSearch();
+                }
+            }
+            @Override
+            public void solutionFound(final Solver source, final Solution solution) {
+                final SolverAnytime outer = SolverAnytime.this;
+                outer.exactSolutionFound = true;
+                final Solution best = outer.bestSolution;
+                if ((null == best) || (solution.size() < best.size())) {
+                    outer.bestSolution = solution;
+                }
+                //the iterative deepening has completed the previous depth: this solution is optimal.
+                outer.provenLowerBound = Math.max(outer.provenLowerBound, solution.size());
+                outer.fireSolutionFound(solution);
+                outer.stopIfDeadlinePassed();
+            }
+            @Override
+            public void searchFinished(final Solver source, final List<Solution> solutions) {
+                //nothing to do here
+            }
+        });
+        final List<Solution> solutions = solver.execute();
+        if ((false == solutions.isEmpty()) && (0 < solutions.get(0).size())) {
+            this.lastResultSolutions.addAll(solutions);     //the optimal solutions
+        }
+        this.solutionStoredStates = solver.getSolutionStoredStates();
+        this.solutionMemoryMegabytes = solver.getSolutionMemoryMegabytes();
+        this.solutionForgottenStates = solver.getSolutionForgottenStates();
+    }
+
+
+
+    //sets the new best solution, if it's shorter than the best solution so far.
+    private void offerSolution(final Solution solution) {
+        final Solution best = this.bestSolution;
+        if ((null == best) || (solution.size() < best.size())) {
+            Logger.println("anytime: new best solution " + solution.toMovelistString() + " " + solution.toString());
+            this.bestSolution = solution;
+            this.fireSolutionFound(solution);
+            this.stopIfDeadlinePassed();
+        }
+    }
+
+    //the deadline has passed while there was no solution: stop the search now that there is one.
+    private void stopIfDeadlinePassed() {
+        synchronized (this.deadlineLock) {
+            if (true == this.isDeadlinePassed) {
+                Logger.println("anytime: found the first solution after the deadline");
+                this.stopSearch();
+            }
+        }
+    }
+
+
+
+    //runs the beam search, and widens the beam as long as it finds no solution and the time is not used up.
+    private void seedSearch(final long startExecute) throws InterruptedException {
+        this.precomputeMinimumMovesToGoal();
+        final long nanoBudget = (0 < this.optDeadlineMilliSeconds ? this.optDeadlineMilliSeconds * 1000000L / SEED_DEADLINE_DIVISOR : Long.MAX_VALUE);
+        for (int width = BEAM_WIDTH;  width <= MAX_BEAM_WIDTH;  width *= 4) {
+            this.beamSearch(width, startExecute, nanoBudget);
+            final Solution best = this.bestSolution;
+            Logger.println("anytime: beam search width=" + width + " solution=" + (null == best ? "none" : best.toMovelistString()) +
+                    " time=" + (System.nanoTime() - startExecute) / 1000000L + "ms");
+            if ((null != best) || (true == this.isStopRequested()) || (System.nanoTime() - startExecute >= nanoBudget)) {
+                break;
+            }
+        }
+    }
+
+
+
+    //beam search: keeps the beamWidth states that are closest to the goal at each depth.
+    private void beamSearch(final int beamWidth, final long startExecute, final long nanoBudget) throws InterruptedException {
+        final KeyMakerLong keyMaker = KeyMakerLong.createInstance(this.numRobots, this.board.sizeNumBits, this.isBoardGoalWildcard);
+        final Set<Long> knownKeys = new HashSet<Long>();
+        final List<int[]> nodeStates = new ArrayList<int[]>();
+        int[] nodeParents = new int[1024];
+        final int[] startState = this.board.getRobotPositions().clone();
+        this.swapGoalLast(startState);  //goal robot is always the last one.
+        nodeStates.add(startState);
+        nodeParents[0] = -1;
+        knownKeys.add(Long.valueOf(keyMaker.run(startState)));
+        int[] level = new int[] { 0 };
+        for (int depth = 0;  (depth < MAX_BEAM_DEPTH) && (level.length > 0);  ++depth) {
+            if (Thread.interrupted()) { throw new InterruptedException(); }
+            if (true == this.isStopRequested()) { break; }
+            //complete each state of this level by the moves of the goal robot alone
+            for (final int node : level) {
+                final int bestLength = (null == this.bestSolution ? Integer.MAX_VALUE : this.bestSolution.size());
+                final int[] soloPath = this.getSoloPath(nodeStates.get(node));
+                if ((null != soloPath) && (depth + soloPath.length - 1 < bestLength)) {
+                    final List<int[]> path = this.getNodePath(nodeStates, nodeParents, node);
+                    final int soloRobot = this.getSoloRobot(path.get(path.size() - 1), soloPath[0]);
+                    for (int i = 1;  i < soloPath.length;  ++i) {
+                        final int[] newState = path.get(path.size() - 1).clone();
+                        newState[soloRobot] = soloPath[i];
+                        path.add(newState);
+                    }
+                    this.offerSolution(this.buildSolution(path));
+                }
+            }
+            //no solution yet: complete the best state of this level by the moves of the goal robot and one helper robot
+            if (null == this.bestSolution) {
+                final List<int[]> path = this.getNodePath(nodeStates, nodeParents, level[0]);
+                final List<int[]> pairPath = this.getPairPath(path.get(path.size() - 1));
+                if (null != pairPath) {
+                    path.addAll(pairPath);
+                    this.offerSolution(this.buildSolution(path));
+                }
+            }
+            if ((null != this.bestSolution) && (depth + 2 >= this.bestSolution.size())) { break; }  //deeper states can't lead to a shorter solution
+            //expand this level: select the best successor states
+            int numSuccessors = 0;
+            int[] successors = new int[level.length * this.numRobots * 4];
+            for (final int node : level) {
+                final int[] state = nodeStates.get(node);
+                for (final int pos : state) { this.isRobot[pos] = true; }
+                for (int robo = 0;  robo < this.numRobots;  ++robo) {
+                    final int oldRoboPos = state[robo];
+                    for (int dir = 0;  dir < 4;  ++dir) {
+                        final int newRoboPos = this.slide(oldRoboPos, dir);
+                        if (oldRoboPos != newRoboPos) {
+                            final int[] newState = state.clone();
+                            newState[robo] = newRoboPos;
+                            if (true == knownKeys.add(Long.valueOf(keyMaker.run(newState)))) {
+                                if (nodeParents.length == nodeStates.size()) { nodeParents = Arrays.copyOf(nodeParents, nodeParents.length * 2); }
+                                nodeParents[nodeStates.size()] = node;
+                                successors[numSuccessors++] = nodeStates.size();
+                                nodeStates.add(newState);
+                            }
+                        }
+                    }
+                }
+                for (final int pos : state) { this.isRobot[pos] = false; }
+            }
+            //sort the successors by the lower bound of moves to goal (stable, so the goal robot moves come first)
+            final long[] scored = new long[numSuccessors];
+            for (int i = 0;  i < numSuccessors;  ++i) {
+                scored[i] = ((long)this.getMinimumMovesToGoal(nodeStates.get(successors[i])) << 32) | i;
+            }
+            Arrays.sort(scored);
+            //the time is used up: go on greedily with only the best state, until the helper moves complete it
+            final boolean isGreedy = (null == this.bestSolution) && (System.nanoTime() - startExecute >= nanoBudget);
+            level = new int[Math.min((isGreedy ? 1 : beamWidth), numSuccessors)];
+            for (int i = 0;  i < level.length;  ++i) {
+                level[i] = successors[(int)scored[i]];
+            }
+        }
+    }
+
+
+
+    //the path of states from the start state to the node.
+    private List<int[]> getNodePath(final List<int[]> nodeStates, final int[] nodeParents, final int lastNode) {
+        final List<int[]> path = new ArrayList<int[]>();
+        for (int node = lastNode;  node >= 0;  node = nodeParents[node]) {
+            path.add(0, nodeStates.get(node));
+        }
+        return path;
+    }
+
+
+
+    //builds the solution from the path of states, which begins with the start state.
+    private Solution buildSolution(final List<int[]> path) {
+        Solution result = new Solution(this.board);
+        int[] state0 = path.get(0).clone();
+        swapGoalLast(state0);
+        for (int i = 1;  i < path.size();  ++i) {
+            final int[] state1 = path.get(i).clone();
+            swapGoalLast(state1);
+            result.add(new Move(this.board, state0, state1, i - 1));
+            state0 = state1;
+        }
+        return result.finish();
+    }
+
+
+
+    private int getSoloRobot(final int[] state, final int position) {
+        for (int robo = 0;  robo < state.length;  ++robo) {
+            if (position == state[robo]) { return robo; }
+        }
+        throw new IllegalStateException("no robot at position " + position);
+    }
+
+
+
+    private int getMinimumMovesToGoal(final int[] state) {
+        if (true == this.isBoardGoalWildcard) {
+            int min = Integer.MAX_VALUE;
+            for (final int pos : state) { min = Math.min(min, this.minimumMovesToGoal[pos]); }
+            return min;
+        }
+        return this.minimumMovesToGoal[state[state.length - 1]];    //goal robot is always the last one.
+    }
+
+
+
+    //the shortest path of the goal robot to the goal, while the other robots stand still.
+    //returns the positions of the path (including the start), or null if the goal can't be reached.
+    private int[] getSoloPath(final int[] state) {
+        int[] result = null;
+        for (int robo = (this.isBoardGoalWildcard ? 0 : state.length - 1);  robo < state.length;  ++robo) {
+            for (final int pos : state) { this.isRobot[pos] = true; }
+            this.isRobot[state[robo]] = false;
+            final int[] path = this.getSoloPath(state[robo]);
+            for (final int pos : state) { this.isRobot[pos] = false; }
+            if ((null != path) && ((null == result) || (path.length < result.length))) {
+                result = path;
+            }
+        }
+        return result;
+    }
+
+    private int[] getSoloPath(final int startPos) {
+        final int goalPosition = this.board.getGoal().position;
+        Arrays.fill(this.soloPrev, -1);
+        this.soloPrev[startPos] = startPos;
+        int queueHead = 0, queueTail = 0;
+        this.soloQueue[queueTail++] = startPos;
+        while ((queueHead < queueTail) && (-1 == this.soloPrev[goalPosition])) {
+            final int pos = this.soloQueue[queueHead++];
+            for (int dir = 0;  dir < 4;  ++dir) {
+                final int newPos = this.slide(pos, dir);
+                if (-1 == this.soloPrev[newPos]) {
+                    this.soloPrev[newPos] = pos;
+                    this.soloQueue[queueTail++] = newPos;
+                }
+            }
+        }
+        if (-1 == this.soloPrev[goalPosition]) {
+            return null;
+        }
+        int length = 1;
+        for (int pos = goalPosition;  pos != startPos;  pos = this.soloPrev[pos]) { ++length; }
+        final int[] result = new int[length];
+        for (int pos = goalPosition, i = length - 1;  i >= 0;  pos = this.soloPrev[pos], --i) { result[i] = pos; }
+        return result;
+    }
+
+
+
+    //the shortest path of the goal robot and one helper robot to the goal, while the other robots stand still.
+    //returns the states of the path (without the start state), or null if the goal can't be reached.
+    //with a wildcard goal any two robots are moved, and either of them may reach the goal.
+    private List<int[]> getPairPath(final int[] state) {
+        List<int[]> result = null;
+        for (int robo1 = (this.isBoardGoalWildcard ? 0 : state.length - 1);  robo1 < state.length;  ++robo1) {
+            for (int robo2 = 0;  robo2 < (this.isBoardGoalWildcard ? robo1 : state.length - 1);  ++robo2) {
+                final List<int[]> path = this.getPairPath(state, robo1, robo2);
+                if ((null != path) && ((null == result) || (path.size() < result.size()))) {
+                    result = path;
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<int[]> getPairPath(final int[] state, final int robo1, final int robo2) {
+        final int size = this.board.size;
+        if (null == this.pairPrev) {
+            this.pairQueue = new int[size * size];
+            this.pairPrev = new int[size * size];
+        }
+        final int goalPosition = this.board.getGoal().position;
+        final int[] tmpState = state.clone();
+        final int startPair = state[robo1] * size + state[robo2];
+        Arrays.fill(this.pairPrev, -1);
+        this.pairPrev[startPair] = startPair;
+        int queueHead = 0, queueTail = 0, goalPair = -1;
+        this.pairQueue[queueTail++] = startPair;
+        while ((queueHead < queueTail) && (goalPair < 0)) {
+            final int pair = this.pairQueue[queueHead++];
+            final int pos1 = pair / size, pos2 = pair % size;
+            tmpState[robo1] = pos1;
+            tmpState[robo2] = pos2;
+            for (int i = 0;  (i < 8) && (goalPair < 0);  ++i) {
+                final int dir = i & 3;
+                final int newPair = (i < 4 ? this.moveRobot(tmpState, pos1, dir) * size + pos2 : pos1 * size + this.moveRobot(tmpState, pos2, dir));
+                if (-1 == this.pairPrev[newPair]) {
+                    this.pairPrev[newPair] = pair;
+                    this.pairQueue[queueTail++] = newPair;
+                    if ((goalPosition == newPair / size) || ((true == this.isBoardGoalWildcard) && (goalPosition == newPair % size))) {
+                        goalPair = newPair;
+                    }
+                }
+            }
+        }
+        if (goalPair < 0) {
+            return null;
+        }
+        final List<int[]> result = new ArrayList<int[]>();
+        for (int pair = goalPair;  pair != startPair;  pair = this.pairPrev[pair]) {
+            final int[] newState = state.clone();
+            newState[robo1] = pair / size;
+            newState[robo2] = pair % size;
+            result.add(0, newState);
+        }
+        return result;
+    }
+
+
+
+    //move the robot until it reaches a wall or another robot (isRobot).
+    private int slide(int pos, final int dir) {
+        final boolean[] walls = this.boardWalls[dir];
+        final int dirIncr = this.directionIncrement[dir];
+        while ((false == walls[pos]) && (false == this.isRobot[pos + dirIncr])) {
+            pos += dirIncr;
+        }
+        return pos;
+    }
+
+
+
+    private void precomputeMinimumMovesToGoal() {
+        final boolean[] posToDo = new boolean[this.minimumMovesToGoal.length];
+        final int goalPosition = this.board.getGoal().position;
+        Arrays.fill(this.minimumMovesToGoal, Integer.MAX_VALUE);
+        this.minimumMovesToGoal[goalPosition] = 0;
+        posToDo[goalPosition] = true;
+        for (boolean done = false;  false == done;  ) {
+            done = true;
+            for (int pos = 0;  pos < posToDo.length;  ++pos) {
+                if (true == posToDo[pos]) {
+                    posToDo[pos] = false;
+                    final int depth = this.minimumMovesToGoal[pos] + 1;
+                    for (int dir = 0;  dir < 4;  ++dir) {
+                        int newPos = pos;
+                        final boolean[] walls = this.boardWalls[dir];
+                        while (false == walls[newPos]) {    //move the robot until it reaches a wall.
+                            newPos += this.directionIncrement[dir];
+                            if (depth < this.minimumMovesToGoal[newPos]) {
+                                this.minimumMovesToGoal[newPos] = depth;
+                                posToDo[newPos] = true;
+                                done = false;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
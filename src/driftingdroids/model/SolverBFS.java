@@ -20,17 +20,41 @@ package driftingdroids.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 
 
 public class SolverBFS extends Solver {
-    private final boolean[] expandRobotPositions;
+    private static final int PARALLEL_ROUND_STATES = 1 << 17;  //number of states that are expanded in one parallel round
+    
+    private int optParallelism = 1;
 
     protected SolverBFS(final Board board) {
         super(board);
-        this.expandRobotPositions = new boolean[this.board.size];
-        Arrays.fill(this.expandRobotPositions, false);
+    }
+    
+    
+    
+    /**
+     * Sets the number of threads that expand the states of each BFS level.
+     * The parallel search is used if rebound moves are allowed, only.
+     * It is disabled by default, because it has not been faster than the single-threaded
+     * search so far (22.7 s vs. 14.7 s in a benchmark): the new keys and states are collected
+     * per partition before they are added, and the new states are stored by one thread.
+     * 
+     * @param parallelism number of worker threads (1 = single-threaded search, the default)
+     */
+    public final void setOptionParallelism(final int parallelism) {
+        this.optParallelism = Math.max(1, parallelism);
+    }
+    
+    public final int getOptionParallelism() {
+        return this.optParallelism;
     }
     
     
@@ -40,9 +64,10 @@ public class SolverBFS extends Solver {
         this.lastResultSolutions = new ArrayList<Solution>();
         
         Logger.println("***** " + this.getClass().getSimpleName() + " *****");
-        Logger.println("options: " + this.getOptionsAsString());
+        Logger.println("options: " + this.getOptionsAsString() + "; parallelism " + this.optParallelism);
         
-        final KnownStates knownStates = new KnownStates();
+        final boolean isParallel = ((true == this.optAllowRebounds) && (1 < this.optParallelism));
+        final KnownStates knownStates = new KnownStates(isParallel ? Integer.highestOneBit(this.optParallelism * 4 - 1) : 1);
         final List<int[]> finalStates = new ArrayList<int[]>();
         final int[] startState = this.board.getRobotPositions().clone();
         swapGoalLast(startState);   //goal robot is always the last one.
@@ -50,7 +75,9 @@ public class SolverBFS extends Solver {
         
         //find the "finalStates" and save all intermediate states in "knownStates"
         final long startGetStates = System.nanoTime();
-        if (true == this.optAllowRebounds) {
+        if (true == isParallel) {
+            this.getFinalStatesParallel(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates);
+        } else if (true == this.optAllowRebounds) {
             this.getFinalStates(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates);
         } else {
             this.getFinalStatesNoRebound(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates);
@@ -80,10 +107,12 @@ public class SolverBFS extends Solver {
                 }
                 Logger.println("finalState=" + this.stateString(finalState) + "  solution=" + tmpSolution.toString() + (tmpSolution.isRebound() ? "  <- rebound" : ""));
                 this.lastResultSolutions.add(tmpSolution);
+                this.fireSolutionFound(tmpSolution);
             }
         }
         
         this.sortSolutions();
+        this.fireSearchFinished();
         
         final long durationPath = (System.nanoTime() - startGetPath) / 1000000L;
         Logger.println("time (Depth-First-Search   for statePaths ) : " + (durationPath / 1000d) + " seconds");
@@ -101,6 +130,7 @@ public class SolverBFS extends Solver {
             final KnownStates knownStates,      //OUT: all known states
             final List<int[]> finalStates       //OUT: final states (goal robot has reached goal position)
             ) throws InterruptedException {
+        final long nanoStart = System.nanoTime();
         int depth = knownStates.incrementDepth();
         assert 0 == depth : depth;
         knownStates.addKey(startState);
@@ -115,30 +145,22 @@ public class SolverBFS extends Solver {
         int prevSize = 0;
         boolean foundGoal = false;
         while(true) {
+            if (0 < depth) { this.fireDepthFinished(depth, knownStates.size(), (System.nanoTime() - nanoStart) / 1000000L); }
             if (0 < finalStates.size()) { return; } //goal has been reached!
+            if (true == this.isStopRequested()) { return; } //search has been stopped
             depth = knownStates.incrementDepth();
             KnownStates.Iterator iter = knownStates.iterator(depth - 1);
             final double thisPrevSizes = (0 == iter.size() ? 0.0 : (double)prevSize / iter.size());
             Logger.println("... BFS working at depth="+depth+"   statesToExpand=" + iter.size() + "   prev/thisStates=" + Math.round(thisPrevSizes*1000d)/1000d);
             if (0 == iter.size()) { return; }       //goal NOT reachable!
+            this.fireDepthStarted(depth);
             prevSize += iter.size();
             //first pass: move goal robot, only.
             while (true == iter.next(tmpState)) {
                 if (Thread.interrupted()) { throw new InterruptedException(); }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = true; }
                 final int oldRoboPos = tmpState[robo1];
-                int dir = -1;
-                for (int dirIncr : this.board.directionIncrement) {
-                    ++dir;
-                    int newRoboPos = oldRoboPos;
-                    final boolean[] walls = this.boardWalls[dir];
-                    while (false == walls[newRoboPos]) {                //move the robot until it reaches a wall or another robot.
-                        newRoboPos += dirIncr;                          //NOTE: we rely on the fact that all boards are surrounded
-                        if (this.expandRobotPositions[newRoboPos]) {    //by outer walls. without the outer walls we would need
-                            newRoboPos -= dirIncr;                      //some additional boundary checking here.
-                            break;
-                        }
-                    }
+                for (int dir = 0;  dir < 4;  ++dir) {
+                    final int newRoboPos = this.moveRobot(tmpState, oldRoboPos, dir);     //move the robot until it reaches a wall or another robot.
                     if (oldRoboPos != newRoboPos) {
                         tmpState[robo1] = newRoboPos;
                         //if we have already found a finalState then this is the last BFS pass.
@@ -155,28 +177,16 @@ public class SolverBFS extends Solver {
                     }
                 }
                 tmpState[robo1] = oldRoboPos;
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = false; }
             }
-            if ((0 < finalStates.size()) && (false == isWildcardGoal)) { return; }  //goal has been reached!
+            if ((0 < finalStates.size()) && (false == isWildcardGoal)) { continue; }    //goal has been reached! (return at top of loop)
             //second pass: move the other (non-goal) robots.
             iter = knownStates.iterator(depth - 1);
             while (true == iter.next(tmpState)) {
                 if (Thread.interrupted()) { throw new InterruptedException(); }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = true; }
                 for (int robo2 = 0;  robo2 < robo1;  ++robo2) {
                     final int oldRoboPos = tmpState[robo2];
-                    int dir = -1;
-                    for (int dirIncr : this.board.directionIncrement) {
-                        ++dir;
-                        int newRoboPos = oldRoboPos;
-                        final boolean[] walls = this.boardWalls[dir];
-                        while (false == walls[newRoboPos]) {                //move the robot until it reaches a wall or another robot.
-                            newRoboPos += dirIncr;                          //NOTE: we rely on the fact that all boards are surrounded
-                            if (this.expandRobotPositions[newRoboPos]) {    //by outer walls. without the outer walls we would need
-                                newRoboPos -= dirIncr;                      //some additional boundary checking here.
-                                break;
-                            }
-                        }
+                    for (int dir = 0;  dir < 4;  ++dir) {
+                        final int newRoboPos = this.moveRobot(tmpState, oldRoboPos, dir);     //move the robot until it reaches a wall or another robot.
                         if (oldRoboPos != newRoboPos) {
                             tmpState[robo2] = newRoboPos;
                             //if we have already found a finalState then this is the last BFS pass.
@@ -195,13 +205,228 @@ public class SolverBFS extends Solver {
                     }
                     tmpState[robo2] = oldRoboPos;
                 }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = false; }
             }
         }
     }
     
     
     
+    /**
+     * Level-synchronous parallel version of <code>getFinalStates</code>.
+     * <p>
+     * The states of each level are expanded in rounds. In each round the states are split into
+     * ranges that are expanded by the worker threads (phase 1). The keys of the new states are
+     * partitioned, so that in phase 2 each worker thread owns one partition of the known keys
+     * and can add keys to it without any locking. Finally the new states are appended to the
+     * list of known states by the calling thread (phase 3).
+     */
+    private void getFinalStatesParallel(
+            final int[] startState,             //IN: initial state (positions of all robots)
+            final int goalPosition,             //IN: position of goal
+            final boolean isWildcardGoal,       //IN: is it the wildcard goal (any robot)
+            final KnownStates knownStates,      //OUT: all known states
+            final List<int[]> finalStates       //OUT: final states (goal robot has reached goal position)
+            ) throws InterruptedException {
+        final long nanoStart = System.nanoTime();
+        int depth = knownStates.incrementDepth();
+        assert 0 == depth : depth;
+        final KnownStates.KeyMaker keyMaker = knownStates.new KeyMaker();
+        final long startKey = keyMaker.run(startState);
+        knownStates.addKey(knownStates.getPartition(startKey), startKey);
+        knownStates.addState(startState);
+        final int[] tmpState = new int[startState.length];
+        if (true == this.isFinalState(startState, goalPosition, isWildcardGoal)) {
+            finalStates.add(startState.clone());
+        }
+        final int numExpandTasks = this.optParallelism * 4;
+        final List<ExpandTask> expandTasks = new ArrayList<ExpandTask>();
+        final List<PartitionTask> partitionTasks = new ArrayList<PartitionTask>();
+        for (int i = 0;  i < knownStates.getNumPartitions();  ++i) {
+            partitionTasks.add(new PartitionTask(knownStates, i, expandTasks));
+        }
+        final ExecutorService pool = Executors.newFixedThreadPool(this.optParallelism);
+        try {
+            //breadth-first search
+            while(true) {
+                if (0 < depth) { this.fireDepthFinished(depth, knownStates.size(), (System.nanoTime() - nanoStart) / 1000000L); }
+                if (0 < finalStates.size()) { return; } //goal has been reached!
+                if (true == this.isStopRequested()) { return; } //search has been stopped
+                depth = knownStates.incrementDepth();
+                final int numStates = knownStates.iterator(depth - 1).size();
+                Logger.println("... BFS working at depth="+depth+"   statesToExpand=" + numStates);
+                if (0 == numStates) { return; }         //goal NOT reachable!
+                this.fireDepthStarted(depth);
+                for (int roundBegin = 0;  roundBegin < numStates;  roundBegin += PARALLEL_ROUND_STATES) {
+                    final int roundEnd = Math.min(numStates, roundBegin + PARALLEL_ROUND_STATES);
+                    //phase 1: expand the states of this round
+                    expandTasks.clear();
+                    final int numTasks = Math.min(numExpandTasks, (roundEnd - roundBegin + 63) / 64);
+                    for (int i = 0;  i < numTasks;  ++i) {
+                        final int begin = roundBegin + (int)((long)(roundEnd - roundBegin) * i / numTasks);
+                        final int end = roundBegin + (int)((long)(roundEnd - roundBegin) * (i + 1) / numTasks);
+                        expandTasks.add(new ExpandTask(knownStates, depth - 1, begin, end));
+                    }
+                    invokeAllTasks(pool, expandTasks);
+                    //phase 2: add the new keys to the partitions of known keys
+                    invokeAllTasks(pool, partitionTasks);
+                    //phase 3: store the new states
+                    for (final PartitionTask partitionTask : partitionTasks) {
+                        for (int i = 0;  i < partitionTask.newStates.size;  ++i) {
+                            unpackState(partitionTask.newStates.values[i], tmpState);
+                            final boolean isFinal = this.isFinalState(tmpState, goalPosition, isWildcardGoal);
+                            //if we have already found a finalState then this is the last BFS level.
+                            //and we only need to store the additional finalStates but not all the "misses".
+                            if ((true == isFinal) || (0 == finalStates.size())) {
+                                knownStates.addState(tmpState);
+                                if (true == isFinal) {
+                                    finalStates.add(tmpState.clone());  //goal robot has reached the goal position.
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    
+    
+    private boolean isFinalState(final int[] state, final int goalPosition, final boolean isWildcardGoal) {
+        if (true == isWildcardGoal) {
+            for (int pos : state) { if (goalPosition == pos) { return true; } }
+            return false;
+        }
+        return (goalPosition == state[state.length - 1]);   //goal robot is always the last one.
+    }
+    
+    
+    
+    private static long packState(final int[] state) {
+        long result = 0;
+        for (int i = state.length - 1;  i >= 0;  --i) {
+            result = (result << 8) | state[i];
+        }
+        return result;
+    }
+    
+    private static void unpackState(long packed, final int[] resultState) {
+        for (int i = 0;  i < resultState.length;  ++i) {
+            resultState[i] = (int)(packed & 0xff);
+            packed >>>= 8;
+        }
+    }
+    
+    
+    
+    private static void invokeAllTasks(final ExecutorService pool, final List<? extends Callable<Void>> tasks) throws InterruptedException {
+        for (final Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof InterruptedException) { throw (InterruptedException)cause; }
+                if (cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+                if (cause instanceof Error) { throw (Error)cause; }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+    
+    
+    
+    //a growable list of primitive longs
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size = 0;
+        public final void add(final long value) {
+            if (this.values.length == this.size) {
+                this.values = Arrays.copyOf(this.values, this.size << 1);
+            }
+            this.values[this.size++] = value;
+        }
+    }
+    
+    
+    
+    //phase 1: expands a range of states and sorts the new states (and their keys) by partition.
+    private final class ExpandTask implements Callable<Void> {
+        private final KnownStates knownStates;
+        private final KnownStates.Iterator iter;
+        private final KnownStates.KeyMaker keyMaker;
+        private final LongList[] keys, states;
+        
+        private ExpandTask(final KnownStates knownStates, final int depth, final int begin, final int end) {
+            this.knownStates = knownStates;
+            this.iter = knownStates.iterator(depth, begin, end);
+            this.keyMaker = knownStates.new KeyMaker();
+            this.keys = new LongList[knownStates.getNumPartitions()];
+            this.states = new LongList[knownStates.getNumPartitions()];
+            for (int i = 0;  i < this.keys.length;  ++i) {
+                this.keys[i] = new LongList();
+                this.states[i] = new LongList();
+            }
+        }
+        
+        @Override
+        public Void call() throws InterruptedException {
+            final int[] tmpState = new int[board.getNumRobots()];
+            while (true == this.iter.next(tmpState)) {
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                for (int robo = 0;  robo < tmpState.length;  ++robo) {
+                    final int oldRoboPos = tmpState[robo];
+                    for (int dir = 0;  dir < 4;  ++dir) {
+                        final int newRoboPos = moveRobot(tmpState, oldRoboPos, dir);    //move the robot until it reaches a wall or another robot.
+                        if (oldRoboPos != newRoboPos) {
+                            tmpState[robo] = newRoboPos;
+                            final long key = this.keyMaker.run(tmpState);
+                            final int partition = this.knownStates.getPartition(key);
+                            this.keys[partition].add(key);
+                            this.states[partition].add(packState(tmpState));
+                        }
+                    }
+                    tmpState[robo] = oldRoboPos;
+                }
+            }
+            return null;
+        }
+    }
+    
+    
+    
+    //phase 2: adds the keys of one partition, which were produced by all ExpandTasks, to the known keys.
+    private static final class PartitionTask implements Callable<Void> {
+        private final KnownStates knownStates;
+        private final int partition;
+        private final List<ExpandTask> expandTasks;
+        private LongList newStates = new LongList();
+        
+        private PartitionTask(final KnownStates knownStates, final int partition, final List<ExpandTask> expandTasks) {
+            this.knownStates = knownStates;
+            this.partition = partition;
+            this.expandTasks = expandTasks;
+        }
+        
+        @Override
+        public Void call() throws InterruptedException {
+            this.newStates = new LongList();
+            for (final ExpandTask expandTask : this.expandTasks) {
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                final LongList keys = expandTask.keys[this.partition];
+                final LongList states = expandTask.states[this.partition];
+                for (int i = 0;  i < keys.size;  ++i) {
+                    if (true == this.knownStates.addKey(this.partition, keys.values[i])) {
+                        this.newStates.add(states.values[i]);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+    
+    
+    
     private void getFinalStatesNoRebound(
             final int[] startState,             //IN: initial state (positions of all robots)
             final int goalPosition,             //IN: position of goal
@@ -209,6 +434,7 @@ public class SolverBFS extends Solver {
             final KnownStates knownStates,      //OUT: all known states
             final List<int[]> finalStates       //OUT: final states (goal robot has reached goal position)
             ) throws InterruptedException {
+        final long nanoStart = System.nanoTime();
         int depth = knownStates.incrementDepth();
         assert 0 == depth : depth;
         final int[] tmpDirs = new int[startState.length];
@@ -225,30 +451,22 @@ public class SolverBFS extends Solver {
         //breadth-first search
         boolean foundGoal = false;
         while(true) {
+            if (0 < depth) { this.fireDepthFinished(depth, knownStates.size(), (System.nanoTime() - nanoStart) / 1000000L); }
             if (0 < finalStates.size()) { return; } //goal has been reached!
+            if (true == this.isStopRequested()) { return; } //search has been stopped
             depth = knownStates.incrementDepth();
             final KnownStates.Iterator iter = knownStates.iterator(depth - 1);
             Logger.println("... BFS working at depth="+depth+"   statesToExpand=" + iter.size());
             if (0 == iter.size()) { return; }       //goal NOT reachable!
+            this.fireDepthStarted(depth);
             while (true == iter.next(tmpState, tmpDirs)) {
                 if (Thread.interrupted()) { throw new InterruptedException(); }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = true; }
                 for (int robo = 0;  robo < tmpState.length;  ++robo) {
                     final int oldRoboPos = tmpState[robo],  oldRoboDir = tmpDirs[robo];
-                    int dir = -1;
-                    for (int dirIncr : this.board.directionIncrement) {
-                        ++dir;
+                    for (int dir = 0;  dir < 4;  ++dir) {
                         //don't allow rebound moves
                         if ((oldRoboDir != dir) && (oldRoboDir != ((dir + 2) & 3))) {
-                            int newRoboPos = oldRoboPos;
-                            final boolean[] walls = this.boardWalls[dir];
-                            while (false == walls[newRoboPos]) {                //move the robot until it reaches a wall or another robot.
-                                newRoboPos += dirIncr;                          //NOTE: we rely on the fact that all boards are surrounded
-                                if (this.expandRobotPositions[newRoboPos]) {    //by outer walls. without the outer walls we would need
-                                    newRoboPos -= dirIncr;                      //some additional boundary checking here.
-                                    break;
-                                }
-                            }
+                            final int newRoboPos = this.moveRobot(tmpState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
                             if (oldRoboPos != newRoboPos) {
                                 tmpState[robo] = newRoboPos;
                                 tmpDirs[robo] = dir;
@@ -270,7 +488,6 @@ public class SolverBFS extends Solver {
                     tmpState[robo] = oldRoboPos;
                     tmpDirs[robo] = oldRoboDir;
                 }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = false; }
             }
         }
     }
@@ -325,19 +542,9 @@ public class SolverBFS extends Solver {
                 //check if this position difference is a possible move along one row or column.
                 if ((0 != diffPos) && ((Math.abs(diffPos) < this.board.width) || (0 == diffPos % this.board.width))) {
                     final int thisPos = prevPos + diffPos;
-                    for (int pos : tmpStatesAtDepth) { this.expandRobotPositions[pos] = true; }
                     final int dir = this.board.getDirection(diffPos);
                     //check if the move would go though obstacles (walls or robots).
-                    final int dirIncr = this.board.directionIncrement[dir];
-                    final boolean[] walls = this.boardWalls[dir];
-                    while (false == walls[prevPos]) {
-                        prevPos += dirIncr;
-                        if (this.expandRobotPositions[prevPos]) {
-                            prevPos -= dirIncr;
-                            break;
-                        }
-                    }
-                    for (int pos : tmpStatesAtDepth) { this.expandRobotPositions[pos] = false; }
+                    prevPos = this.moveRobot(tmpStatesAtDepth, prevPos, dir);
                     //follow the move to the previous level in the array of states. (recursion)
                     if (prevPos == thisPos) {
                         if (this.doPathDFS(tmpStatesAtDepth, knownStates, depth-1, result, tmpStates)) {
@@ -384,18 +591,8 @@ public class SolverBFS extends Solver {
                     //don't allow rebound moves
                     if ((tmpDir != dir) && (tmpDir != ((dir + 2) & 3))) {
                         final int thisPos = prevPos + diffPos;
-                        for (int pos : tmpStatesAtDepth) { this.expandRobotPositions[pos] = true; }
                         //check if the move would go though obstacles (walls or robots).
-                        final int dirIncr = this.board.directionIncrement[dir];
-                        final boolean[] walls = this.boardWalls[dir];
-                        while (false == walls[prevPos]) {
-                            prevPos += dirIncr;
-                            if (this.expandRobotPositions[prevPos]) {
-                                prevPos -= dirIncr;
-                                break;
-                            }
-                        }
-                        for (int pos : tmpStatesAtDepth) { this.expandRobotPositions[pos] = false; }
+                        prevPos = this.moveRobot(tmpStatesAtDepth, prevPos, dir);
                         //follow the move to the previous level in the array of states. (recursion)
                         if (prevPos == thisPos) {
                             if (this.doPathDFSNoRebound(tmpStatesAtDepth, knownStates, depth-1, result, tmpStates, tmpDirections)) {
@@ -419,20 +616,38 @@ public class SolverBFS extends Solver {
     
     
     private class KnownStates {
-        private final AllKeys allKeys;
+        private final AllKeys[] allKeys;        //the partitions of known keys
         private final AllStates allStates;
         private final AllDirections allDirections;
         private int currentDepth = -1;
         
-        public KnownStates() {
-            this.allKeys = ((true == isBoardStateInt32) ? new AllKeysInt() : new AllKeysLong());
+        public KnownStates(final int numPartitions) {
+            assert Integer.bitCount(numPartitions) == 1 : numPartitions;
+            this.allKeys = new AllKeys[numPartitions];
+            for (int i = 0;  i < numPartitions;  ++i) {
+                this.allKeys[i] = ((true == isBoardStateInt32) ? new AllKeysInt() : new AllKeysLong());
+            }
             this.allStates = new AllStatesByte();   //TODO add AllStatesShort to support board sizes > 16*16
             this.allDirections = new AllDirectionsShort();
         }
         
+        //create the keys of states outside of the partitions of known keys (one instance per thread)
+        public final class KeyMaker {
+            private final KeyMakerInt keyMakerInt;
+            private final KeyMakerLong keyMakerLong;
+            public KeyMaker() {
+                this.keyMakerInt = ((true == isBoardStateInt32) ? KeyMakerInt.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard) : null);
+                this.keyMakerLong = ((true == isBoardStateInt32) ? null : KeyMakerLong.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard));
+            }
+            public final long run(final int[] state) {
+                return ((null != this.keyMakerInt) ? this.keyMakerInt.run(state) : this.keyMakerLong.run(state));
+            }
+        }
+        
         //store the unique keys of all known states
         private abstract class AllKeys {
             public abstract boolean add(final int[] state);
+            public abstract boolean add(final long key);
             public abstract long getBytesAllocated();
         }
         //store the unique keys of all known states in 32-bit ints
@@ -446,6 +661,10 @@ public class SolverBFS extends Solver {
                 return this.theSet.add(key);
             }
             @Override
+            public final boolean add(final long key) {
+                return this.theSet.add((int)key);
+            }
+            @Override
             public final long getBytesAllocated() {
                 return this.theSet.getBytesAllocated();
             }
@@ -461,6 +680,10 @@ public class SolverBFS extends Solver {
                 return this.theSet.add(key);
             }
             @Override
+            public final boolean add(final long key) {
+                return this.theSet.add(key);
+            }
+            @Override
             public final long getBytesAllocated() {
                 return this.theSet.getBytesAllocated();
             }
@@ -481,6 +704,7 @@ public class SolverBFS extends Solver {
             }
             public abstract void add(final int[] state);
             public abstract Iterator iterator(final int depth);
+            public abstract Iterator iterator(final int depth, final int begin, final int end);
             public abstract class Iterator {
                 protected final int iterStart, iterEnd;
                 protected int iterCurrent, iterArrayNum, iterOffset;
@@ -491,6 +715,14 @@ public class SolverBFS extends Solver {
                     this.iterArrayNum = (this.iterStart * board.getNumRobots()) / ARRAY_SIZE;
                     this.iterOffset = (this.iterStart * board.getNumRobots()) % ARRAY_SIZE;
                 }
+                //iterate the states [begin, end) of this depth, only
+                protected Iterator(final int depth, final int begin, final int end) {
+                    this.iterStart = depthBegin.get(depth).intValue() + begin;
+                    this.iterEnd = depthBegin.get(depth).intValue() + end;
+                    this.iterCurrent = this.iterStart;
+                    this.iterArrayNum = (this.iterStart * board.getNumRobots()) / ARRAY_SIZE;
+                    this.iterOffset = (this.iterStart * board.getNumRobots()) % ARRAY_SIZE;
+                }
                 public int size() {
                     return this.iterEnd - this.iterStart;
                 }
@@ -527,6 +759,10 @@ public class SolverBFS extends Solver {
                     super(depth);
                     this.iterArray = allStatesArrays[this.iterArrayNum++];
                 }
+                public AllStatesByteIterator(final int depth, final int begin, final int end) {
+                    super(depth, begin, end);
+                    this.iterArray = allStatesArrays[this.iterArrayNum++];
+                }
                 @Override
                 public boolean next(final int[] resultState) {
                   final boolean hasNext = (this.iterEnd > this.iterCurrent);
@@ -550,6 +786,10 @@ public class SolverBFS extends Solver {
                 return new AllStatesByteIterator(depth);
             }
             @Override
+            public AllStates.Iterator iterator(final int depth, final int begin, final int end) {
+                return new AllStatesByteIterator(depth, begin, end);
+            }
+            @Override
             public final long getBytesAllocated() {
                 long result = 0;
                 for (int i = 0;  i < this.addArrayNum;  ++i) {
@@ -657,6 +897,10 @@ public class SolverBFS extends Solver {
                 this.allStatesIter = allStates.iterator(depth);
                 this.allDirsIter = allDirections.iterator(depth);
             }
+            public Iterator(final int depth, final int begin, final int end) {
+                this.allStatesIter = allStates.iterator(depth, begin, end);
+                this.allDirsIter = null;    //states only, without directions
+            }
             public int size() {
                 return this.allStatesIter.size();
             }
@@ -682,7 +926,23 @@ public class SolverBFS extends Solver {
         
         public final boolean addKey(final int[] state) {
             assert state.length == board.getNumRobots() : state.length;
-            return this.allKeys.add(state);
+            assert 1 == this.allKeys.length : this.allKeys.length;
+            return this.allKeys[0].add(state);
+        }
+        
+        //may be called concurrently for different partitions
+        public final boolean addKey(final int partition, final long key) {
+            return this.allKeys[partition].add(key);
+        }
+        
+        //the partition depends on the lowest key element, which is the index into the root node of KeyTrieSet.
+        //so the keys of a partition share the nodes of their trie just like all keys share a single trie.
+        public final int getPartition(final long key) {
+            return (int)key & (this.allKeys.length - 1);
+        }
+        
+        public final int getNumPartitions() {
+            return this.allKeys.length;
         }
         
         public final void addState(final int[] state) {
@@ -698,6 +958,9 @@ public class SolverBFS extends Solver {
         public Iterator iterator(final int depth) {
             return new Iterator(depth);
         }
+        public Iterator iterator(final int depth, final int begin, final int end) {
+            return new Iterator(depth, begin, end);
+        }
         public final int size() {
             return this.allStates.size();
         }
@@ -708,7 +971,11 @@ public class SolverBFS extends Solver {
             return "size=" + this.allStates.size() + " depth=" + this.currentDepth;
         }
         public final String megaBytesAllocated() {
-            final int keysMB = (int)((this.allKeys.getBytesAllocated() + (1 << 20) - 1) >> 20);
+            long keysBytes = 0;
+            for (final AllKeys keys : this.allKeys) {
+                keysBytes += keys.getBytesAllocated();
+            }
+            final int keysMB = (int)((keysBytes + (1 << 20) - 1) >> 20);
             final int statesMB = (int)((this.allStates.getBytesAllocated() + (1 << 20) - 1) >> 20);
             final int dirsMB = (int)((this.allDirections.getBytesAllocated() + (1 << 20) - 1) >> 20);
             return "megabytes allocated: keys=" + keysMB + " states=" + statesMB + " directions=" + dirsMB +
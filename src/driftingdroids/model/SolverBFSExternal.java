@@ -0,0 +1,545 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+
+/**
+ * This is a breadth-first search solver that keeps the states in files instead of the heap.
+ * <p>
+ * Each BFS level is a file of sorted state keys. The keys of the next level are generated by
+ * reading the previous level sequentially. They are collected in a heap buffer of fixed size,
+ * which is sorted and written to a "run" file whenever it is full. Duplicate states are removed
+ * later (delayed duplicate detection): all runs are merged with the file of all known keys, and
+ * the keys that are not yet known form the new level. All files are read and written sequentially
+ * through memory-mapped windows.
+ * <p>
+ * The files are stored in a new directory inside the directory given by the system property
+ * "ExternalBFSDir" (or "java.io.tmpdir") and they are deleted at the end of the search.
+ * <p>
+ * The option "no rebound moves" and the special rule for goals that can be reached in
+ * one move (<code>Board.isSolution01()</code>) depend on the path, not only on the state.
+ * These cases are handed to <code>SolverIDDFS</code>.
+ */
+public class SolverBFSExternal extends Solver {
+
+    private static final int RUN_KEYS = 1 << 20;        //size of the heap buffer (number of keys)
+    private static final int MAX_SOLUTIONS = 100;
+
+    public static final String DIRECTORY;
+    static {
+        String directory = null;
+        try {
+            directory = System.getProperty("ExternalBFSDir");
+            if (null == directory) {
+                directory = System.getProperty("java.io.tmpdir");
+            }
+        } catch (Exception ignored) { }
+        DIRECTORY = directory;
+    }
+
+    private final int numRobots;
+    private final int[] directionIncrement;
+    private final boolean[] isRobot;
+    private KeyMakerLong keyMaker;
+    private File tempDirectory;
+    private int tempFileNumber;
+
+
+
+    protected SolverBFSExternal(final Board board) {
+        super(board);
+        this.numRobots = board.getNumRobots();
+        this.directionIncrement = board.directionIncrement;
+        this.isRobot = new boolean[board.size];
+    }
+
+
+
+    @Override
+    public List<Solution> execute() throws InterruptedException {
+        final long startExecute = System.nanoTime();
+        this.lastResultSolutions = new ArrayList<Solution>();
+
+        Logger.println("***** " + this.getClass().getSimpleName() + " *****");
+        Logger.println("options: " + this.getOptionsAsString());
+
+        if (null == this.board.getGoal()) {
+            Logger.println("no goal is set - nothing to solve!");
+        } else if ((false == this.optAllowRebounds) || (true == this.board.isSolution01())) {
+            Logger.println("no rebound moves or solution01: using SolverIDDFS");
+            final Solver solver = new SolverIDDFS(this.board);
+            this.shareListenersWith(solver);
+            solver.setOptionSolutionMode(this.optSolutionMode);
+            solver.setOptionAllowRebounds(this.optAllowRebounds);
+            this.lastResultSolutions = solver.execute();
+            this.solutionStoredStates = solver.getSolutionStoredStates();
+            this.solutionMemoryMegabytes = solver.getSolutionMemoryMegabytes();
+        } else {
+            this.keyMaker = KeyMakerLong.createInstance(this.numRobots, this.board.sizeNumBits, this.isBoardGoalWildcard);
+            try {
+                this.tempDirectory = Files.createTempDirectory(new File(DIRECTORY).toPath(), "driftingdroids-bfs").toFile();
+                this.tempFileNumber = 0;
+                this.search();
+            } catch (IOException e) {
+                throw new IllegalStateException("external BFS failed: " + e, e);
+            } finally {
+                if (null != this.tempDirectory) {
+                    deleteFile(this.tempDirectory);     //the directory is empty now
+                    this.tempDirectory = null;
+                }
+            }
+            this.solutionMemoryMegabytes = (RUN_KEYS * 8 + (1 << 20) - 1) >> 20;
+        }
+        this.sortSolutions();
+        this.fireSearchFinished();
+
+        this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
+        return this.lastResultSolutions;
+    }
+
+
+
+    private void search() throws InterruptedException, IOException {
+        final long nanoStart = System.nanoTime();
+        final int[] startState = this.board.getRobotPositions().clone();
+        this.swapGoalLast(startState);  //goal robot is always the last one.
+        Logger.println("startState=" + this.stateString(startState));
+        final List<KeyFile> levels = new ArrayList<KeyFile>();
+        KeyFile allKeys = null;
+        try {
+            final KeyFileWriter startWriter = new KeyFileWriter(this.newTempFile());
+            startWriter.add(this.keyMaker.run(startState));
+            levels.add(startWriter.close());
+            allKeys = levels.get(0);
+            long[] finalKeys = (this.isFinal(levels.get(0).first()) ? new long[] { levels.get(0).first() } : new long[0]);
+            long numStates = 1;
+            while ((0 == finalKeys.length) && (0 < levels.get(levels.size() - 1).size) && (false == this.isStopRequested())) {
+                this.fireDepthStarted(levels.size());
+                //expand the last level into sorted runs
+                final List<KeyFile> runs = this.expandLevel(levels.get(levels.size() - 1));
+                //merge the runs and the known keys: the new keys form the next level
+                final KeyFileWriter levelWriter = new KeyFileWriter(this.newTempFile());
+                final KeyFileWriter allKeysWriter = new KeyFileWriter(this.newTempFile());
+                final List<Long> newFinalKeys = new ArrayList<Long>();
+                final KeyFileReader allKeysReader = new KeyFileReader(allKeys);
+                final KeyFileMerger runsMerger = new KeyFileMerger(runs);
+                long runsKey = (runsMerger.hasNext() ? runsMerger.next() : Long.MAX_VALUE);
+                long allKey = (allKeysReader.hasNext() ? allKeysReader.next() : Long.MAX_VALUE);
+                for (long count = 0;  (Long.MAX_VALUE != runsKey) || (Long.MAX_VALUE != allKey);  ++count) {
+                    if ((0 == (count & 0xffff)) && Thread.interrupted()) { throw new InterruptedException(); }
+                    if (allKey < runsKey) {
+                        allKeysWriter.add(allKey);
+                        allKey = (allKeysReader.hasNext() ? allKeysReader.next() : Long.MAX_VALUE);
+                    } else {
+                        if (allKey > runsKey) {     //new key
+                            levelWriter.add(runsKey);
+                            if ((true == this.isFinal(runsKey)) && (newFinalKeys.size() < MAX_SOLUTIONS)) {
+                                newFinalKeys.add(Long.valueOf(runsKey));
+                            }
+                        }
+                        allKeysWriter.add(runsKey);
+                        if (allKey == runsKey) {
+                            allKey = (allKeysReader.hasNext() ? allKeysReader.next() : Long.MAX_VALUE);
+                        }
+                        //skip the duplicates in the runs
+                        final long prevKey = runsKey;
+                        do {
+                            runsKey = (runsMerger.hasNext() ? runsMerger.next() : Long.MAX_VALUE);
+                        } while ((prevKey == runsKey) && (Long.MAX_VALUE != runsKey));
+                    }
+                }
+                for (final KeyFile run : runs) {
+                    deleteFile(run.file);
+                }
+                levels.add(levelWriter.close());
+                if (allKeys != levels.get(0)) {
+                    deleteFile(allKeys.file);
+                }
+                allKeys = allKeysWriter.close();
+                numStates = allKeys.size;
+                finalKeys = new long[newFinalKeys.size()];
+                for (int i = 0;  i < finalKeys.length;  ++i) { finalKeys[i] = newFinalKeys.get(i).longValue(); }
+                Logger.println("externalBFS:  finished depth=" + (levels.size() - 1) +
+                        " levelStates=" + levels.get(levels.size() - 1).size +
+                        " states=" + numStates +
+                        " runs=" + runs.size() +
+                        " totalTime=" + (System.nanoTime() - nanoStart) / 1000000L + "ms");
+                this.fireDepthFinished(levels.size() - 1, (int)Math.min(Integer.MAX_VALUE, numStates), (System.nanoTime() - nanoStart) / 1000000L);
+            }
+            this.solutionStoredStates = (int)Math.min(Integer.MAX_VALUE, numStates);
+            if (0 < finalKeys.length) {
+                this.buildSolutions(finalKeys, levels, startState);
+            }
+        } finally {
+            for (final KeyFile level : levels) {
+                deleteFile(level.file);
+            }
+            if ((null != allKeys) && (false == levels.contains(allKeys))) {
+                deleteFile(allKeys.file);
+            }
+        }
+    }
+
+
+
+    //reads the level and writes the keys of all successor states to sorted runs (without duplicates in a run).
+    private List<KeyFile> expandLevel(final KeyFile level) throws InterruptedException, IOException {
+        final List<KeyFile> runs = new ArrayList<KeyFile>();
+        final long[] buffer = new long[RUN_KEYS];
+        final long[] successors = new long[this.numRobots * 4];
+        final int[] state = new int[this.numRobots];
+        int bufferSize = 0;
+        final KeyFileReader reader = new KeyFileReader(level);
+        for (long count = 0;  reader.hasNext();  ++count) {
+            if ((0 == (count & 0xffff)) && Thread.interrupted()) { throw new InterruptedException(); }
+            this.decode(reader.next(), state);
+            final int numSuccessors = this.getSuccessors(state, successors);
+            if (bufferSize + numSuccessors > buffer.length) {
+                runs.add(this.writeRun(buffer, bufferSize));
+                bufferSize = 0;
+            }
+            System.arraycopy(successors, 0, buffer, bufferSize, numSuccessors);
+            bufferSize += numSuccessors;
+        }
+        if (0 < bufferSize) {
+            runs.add(this.writeRun(buffer, bufferSize));
+        }
+        return runs;
+    }
+
+
+
+    private KeyFile writeRun(final long[] buffer, final int bufferSize) throws IOException {
+        Arrays.sort(buffer, 0, bufferSize);
+        final KeyFileWriter writer = new KeyFileWriter(this.newTempFile());
+        for (int i = 0;  i < bufferSize;  ++i) {
+            if ((0 == i) || (buffer[i - 1] != buffer[i])) {
+                writer.add(buffer[i]);
+            }
+        }
+        return writer.close();
+    }
+
+
+
+    private File newTempFile() {
+        return new File(this.tempDirectory, "keys-" + (this.tempFileNumber++) + ".bin");
+    }
+
+
+
+    private static void deleteFile(final File file) {
+        if (false == file.delete()) {
+            file.deleteOnExit();    //the file may still be mapped (Windows)
+        }
+    }
+
+
+
+    private boolean isFinal(final long key) {
+        final int goalPosition = this.board.getGoal().position;
+        if (true == this.isBoardGoalWildcard) {
+            long tmpKey = key;
+            for (int i = 0;  i < this.numRobots;  ++i) {
+                if (goalPosition == ((int)tmpKey & this.boardSizeBitMask)) { return true; }
+                tmpKey >>>= this.board.sizeNumBits;
+            }
+            return false;
+        }
+        //goal robot is always the last one.
+        return (goalPosition == ((int)(key >>> ((this.numRobots - 1) * this.board.sizeNumBits)) & this.boardSizeBitMask));
+    }
+
+
+
+    private void decode(long key, final int[] state) {
+        for (int i = 0;  i < state.length;  ++i) {
+            state[i] = (int)key & this.boardSizeBitMask;
+            key >>>= this.board.sizeNumBits;
+        }
+    }
+
+
+
+    //forward moves: each robot moves until it reaches a wall or another robot.
+    private int getSuccessors(final int[] state, final long[] result) {
+        int numResults = 0;
+        for (final int pos : state) { this.isRobot[pos] = true; }
+        for (int robo = 0;  robo < state.length;  ++robo) {
+            final int oldRoboPos = state[robo];
+            for (int dir = 0;  dir < 4;  ++dir) {
+                final boolean[] walls = this.boardWalls[dir];
+                final int dirIncr = this.directionIncrement[dir];
+                int newRoboPos = oldRoboPos;
+                while ((false == walls[newRoboPos]) && (false == this.isRobot[newRoboPos + dirIncr])) {
+                    newRoboPos += dirIncr;
+                }
+                if (oldRoboPos != newRoboPos) {
+                    state[robo] = newRoboPos;
+                    result[numResults++] = this.keyMaker.run(state);
+                }
+            }
+            state[robo] = oldRoboPos;
+        }
+        for (final int pos : state) { this.isRobot[pos] = false; }
+        return numResults;
+    }
+
+
+
+    //rebuilds the paths of all final states together, with one sequential pass over each level.
+    private void buildSolutions(final long[] finalKeys, final List<KeyFile> levels, final int[] startState) throws InterruptedException, IOException {
+        final int depth = levels.size() - 1;
+        final long[][] paths = new long[finalKeys.length][depth + 1];
+        for (int i = 0;  i < finalKeys.length;  ++i) {
+            paths[i][depth] = finalKeys[i];
+        }
+        final long[] successors = new long[this.numRobots * 4];
+        final int[] state = new int[this.numRobots];
+        for (int d = depth;  d > 0;  --d) {
+            //find a predecessor of each target state in the previous level
+            long[] targets = new long[paths.length];
+            for (int i = 0;  i < paths.length;  ++i) { targets[i] = paths[i][d]; }
+            Arrays.sort(targets);
+            int numTargets = 0;
+            for (int i = 0;  i < targets.length;  ++i) {
+                if ((0 == i) || (targets[i - 1] != targets[i])) { targets[numTargets++] = targets[i]; }
+            }
+            targets = Arrays.copyOf(targets, numTargets);
+            final long[] predecessors = new long[numTargets];
+            final boolean[] isFound = new boolean[numTargets];
+            int numFound = 0;
+            final KeyFileReader reader = new KeyFileReader(levels.get(d - 1));
+            for (long count = 0;  (numFound < numTargets) && reader.hasNext();  ++count) {
+                if ((0 == (count & 0xffff)) && Thread.interrupted()) { throw new InterruptedException(); }
+                final long key = reader.next();
+                this.decode(key, state);
+                final int numSuccessors = this.getSuccessors(state, successors);
+                for (int n = 0;  n < numSuccessors;  ++n) {
+                    final int idx = Arrays.binarySearch(targets, successors[n]);
+                    if ((idx >= 0) && (false == isFound[idx])) {
+                        isFound[idx] = true;
+                        predecessors[idx] = key;
+                        ++numFound;
+                    }
+                }
+            }
+            for (int i = 0;  i < paths.length;  ++i) {
+                paths[i][d - 1] = predecessors[Arrays.binarySearch(targets, paths[i][d])];
+            }
+        }
+        for (final long[] path : paths) {
+            this.buildSolution(path, startState);
+        }
+    }
+
+
+
+    private void buildSolution(final long[] path, final int[] startState) {
+        //keys contain sorted positions: find the robot that has moved by the positions that differ
+        Solution newSolution = new Solution(this.board);
+        int[] state0 = startState.clone();
+        swapGoalLast(state0);
+        final int[] keyState0 = new int[this.numRobots], keyState1 = new int[this.numRobots];
+        for (int i = 0;  i < path.length - 1;  ++i) {
+            this.decode(path[i], keyState0);
+            this.decode(path[i + 1], keyState1);
+            int oldPos = -1, newPos = -1;
+            for (final int pos : keyState0) { this.isRobot[pos] = true; }
+            for (final int pos : keyState1) { if (false == this.isRobot[pos]) { newPos = pos; } }
+            for (final int pos : keyState0) { this.isRobot[pos] = false; }
+            for (final int pos : keyState1) { this.isRobot[pos] = true; }
+            for (final int pos : keyState0) { if (false == this.isRobot[pos]) { oldPos = pos; } }
+            for (final int pos : keyState1) { this.isRobot[pos] = false; }
+            final int[] state1 = state0.clone();
+            for (int robo = 0;  robo < state1.length;  ++robo) {
+                if (oldPos == state1[robo]) { state1[robo] = newPos; }
+            }
+            newSolution.add(new Move(this.board, state0, state1, i));
+            state0 = state1;
+        }
+        newSolution = newSolution.finish();
+        Logger.println(newSolution.toMovelistString() + " " + newSolution.toString());
+        if (false == this.lastResultSolutions.contains(newSolution)) {
+            this.lastResultSolutions.add(newSolution);
+            this.fireSolutionFound(newSolution);
+        }
+    }
+
+
+
+    //a file of sorted keys.
+    private static final class KeyFile {
+        private final File file;
+        private final long size;    //number of keys
+
+        private KeyFile(final File file, final long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        private long first() throws IOException {
+            final KeyFileReader reader = new KeyFileReader(this);
+            return reader.next();
+        }
+    }
+
+
+
+    //writes keys sequentially through memory-mapped windows of growing size.
+    private static final class KeyFileWriter {
+        private static final int MAX_WINDOW_BYTES = 64 << 20;
+        private final File file;
+        private final RandomAccessFile raf;
+        private long windowStart = 0;
+        private MappedByteBuffer window;
+        private long size = 0;
+
+        private KeyFileWriter(final File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.window = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 1 << 16);
+        }
+
+        private void add(final long key) throws IOException {
+            if (false == this.window.hasRemaining()) {
+                final int windowBytes = Math.min(MAX_WINDOW_BYTES, this.window.capacity() * 2);
+                this.windowStart += this.window.capacity();
+                this.window = this.raf.getChannel().map(FileChannel.MapMode.READ_WRITE, this.windowStart, windowBytes);
+            }
+            this.window.putLong(key);
+            ++this.size;
+        }
+
+        private KeyFile close() throws IOException {
+            this.window = null;
+            this.raf.close();   //the file may be larger than its keys (the rest of the last window)
+            return new KeyFile(this.file, this.size);
+        }
+    }
+
+
+
+    //reads keys sequentially through memory-mapped windows.
+    private static final class KeyFileReader {
+        private static final int MAX_WINDOW_KEYS = 8 << 20;
+        private final KeyFile keyFile;
+        private long position = 0;      //number of keys read
+        private MappedByteBuffer window = null;
+
+        private KeyFileReader(final KeyFile keyFile) {
+            this.keyFile = keyFile;
+        }
+
+        private boolean hasNext() {
+            return (this.position < this.keyFile.size);
+        }
+
+        private long next() throws IOException {
+            if ((null == this.window) || (false == this.window.hasRemaining())) {
+                final long windowKeys = Math.min(MAX_WINDOW_KEYS, this.keyFile.size - this.position);
+                final RandomAccessFile raf = new RandomAccessFile(this.keyFile.file, "r");
+                try {
+                    this.window = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, this.position * 8, windowKeys * 8);
+                } finally {
+                    raf.close();    //the mapping stays valid
+                }
+            }
+            ++this.position;
+            return this.window.getLong();
+        }
+    }
+
+
+
+    //merges several files of sorted keys into one sorted sequence (with duplicates).
+    private static final class KeyFileMerger {
+        private final KeyFileReader[] readers;
+        private final long[] heads;
+        private final int[] heap;       //indexes of readers, a min-heap by their heads
+        private int heapSize = 0;
+
+        private KeyFileMerger(final List<KeyFile> keyFiles) throws IOException {
+            this.readers = new KeyFileReader[keyFiles.size()];
+            this.heads = new long[keyFiles.size()];
+            this.heap = new int[keyFiles.size()];
+            for (int i = 0;  i < this.readers.length;  ++i) {
+                this.readers[i] = new KeyFileReader(keyFiles.get(i));
+                if (this.readers[i].hasNext()) {
+                    this.heads[i] = this.readers[i].next();
+                    this.heap[this.heapSize] = i;
+                    this.siftUp(this.heapSize++);
+                }
+            }
+        }
+
+        private boolean hasNext() {
+            return (0 < this.heapSize);
+        }
+
+        private long next() throws IOException {
+            final int reader = this.heap[0];
+            final long result = this.heads[reader];
+            if (this.readers[reader].hasNext()) {
+                this.heads[reader] = this.readers[reader].next();
+            } else {
+                this.heap[0] = this.heap[--this.heapSize];
+            }
+            this.siftDown(0);
+            return result;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (this.heads[this.heap[parent]] <= this.heads[this.heap[i]]) { break; }
+                this.swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                final int left = 2 * i + 1, right = left + 1;
+                int smallest = i;
+                if ((left < this.heapSize) && (this.heads[this.heap[left]] < this.heads[this.heap[smallest]])) { smallest = left; }
+                if ((right < this.heapSize) && (this.heads[this.heap[right]] < this.heads[this.heap[smallest]])) { smallest = right; }
+                if (smallest == i) { break; }
+                this.swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(final int i, final int j) {
+            final int tmp = this.heap[i];
+            this.heap[i] = this.heap[j];
+            this.heap[j] = tmp;
+        }
+    }
+}
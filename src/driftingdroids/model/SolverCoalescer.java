@@ -0,0 +1,203 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+
+/**
+ * This class coalesces identical solve requests that are running at the same time.
+ * <p>
+ * Requests are identical if they have the same board configuration (see
+ * <code>CanonicalBoard.createKey</code>), solver class and options. The first request
+ * runs its solver on the scheduler. While it is running, the identical requests attach to
+ * the same search instead of starting their own solver.
+ * <p>
+ * Each request gets a <code>Ticket</code>. The search is counted as being used by all
+ * tickets that have not been cancelled. It is stopped only when the last ticket is cancelled.
+ * <p>
+ * The methods of this class are thread-safe.
+ */
+public class SolverCoalescer {
+
+    private final SolverScheduler scheduler;
+    private final Map<String, Search> searches = new HashMap<String, Search>();
+    private long numSearches = 0, numCoalesced = 0;
+
+
+
+    /**
+     * @param scheduler runs the solvers
+     */
+    public SolverCoalescer(final SolverScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+
+
+    /**
+     * Runs the solver, or attaches to a running search of an identical solver.
+     *
+     * @param solver the solver, with its board and options
+     * @return the ticket of this request
+     * @throws java.util.concurrent.RejectedExecutionException if the scheduler doesn't accept a new search
+     */
+    public Ticket submit(final Solver solver) {
+        //the key and the memory estimate take a while: compute them before taking the lock
+        final String key = CanonicalBoard.createKey(solver.board) + "|" + solver.getOptionsKey();
+        final SolverScheduler.Estimate estimate = SolverScheduler.estimate(solver.board);
+        synchronized (this) {
+            Search search = this.searches.get(key);
+            final boolean isCoalesced = (null != search);
+            if (true == isCoalesced) {
+                ++this.numCoalesced;
+            } else {
+                search = new Search(key, solver);
+                search.job = this.scheduler.submit(solver, search, estimate);
+                this.searches.put(key, search);
+                ++this.numSearches;
+            }
+            ++search.numTickets;
+            return new Ticket(search, isCoalesced);
+        }
+    }
+
+
+
+    public synchronized int getNumRunningSearches() {
+        return this.searches.size();
+    }
+
+    public synchronized long getNumSearches() {
+        return this.numSearches;
+    }
+
+    /**
+     * @return number of requests that have been attached to a running search
+     */
+    public synchronized long getNumCoalesced() {
+        return this.numCoalesced;
+    }
+
+
+
+    private synchronized void remove(final Search search) {
+        if (search == this.searches.get(search.key)) {
+            this.searches.remove(search.key);
+        }
+    }
+
+    private synchronized void cancel(final Search search) {
+        if (0 == --search.numTickets) {
+            //nobody waits for this search anymore
+            this.remove(search);
+            search.solver.stopSearch();
+            search.job.cancel(true);
+        }
+    }
+
+
+
+    private class Search implements Callable<List<Solution>> {
+        private final String key;
+        private final Solver solver;
+        private SolverScheduler.Job job;
+        private int numTickets = 0;     //guarded by SolverCoalescer.this
+
+        private Search(final String key, final Solver solver) {
+            this.key = key;
+            this.solver = solver;
+        }
+
+        @Override
+        public List<Solution> call() throws Exception {
+            try {
+                return this.solver.execute();
+            } finally {
+                SolverCoalescer.this.remove(this);  //later requests start a new search
+            }
+        }
+    }
+
+
+
+    /**
+     * The ticket of one request. It gets the result of the (shared) search.
+     */
+    public class Ticket {
+        private final Search search;
+        private final boolean isCoalesced;
+        private boolean isCancelled = false;     //guarded by SolverCoalescer.this
+
+        private Ticket(final Search search, final boolean isCoalesced) {
+            this.search = search;
+            this.isCoalesced = isCoalesced;
+        }
+
+        /**
+         * @return the solver that runs the search; it may be the solver of another request
+         */
+        public Solver getSolver() {
+            return this.search.solver;
+        }
+
+        /**
+         * @return the scheduler job that runs the search
+         */
+        public SolverScheduler.Job getJob() {
+            return this.search.job;
+        }
+
+        /**
+         * @return <code>true</code> if this ticket has been attached to the search of another request
+         */
+        public boolean isCoalesced() {
+            return this.isCoalesced;
+        }
+
+        /**
+         * Waits for the result of the search.
+         *
+         * @param timeout the maximum time to wait
+         * @param unit the time unit of the timeout
+         * @return the solutions, sorted as returned by <code>Solver.execute()</code>
+         */
+        public List<Solution> get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return this.search.job.get(timeout, unit);
+        }
+
+        /**
+         * Gives up this request. The search is stopped if no other ticket waits for it.
+         */
+        public void cancel() {
+            synchronized (SolverCoalescer.this) {
+                if (false == this.isCancelled) {
+                    this.isCancelled = true;
+                    SolverCoalescer.this.cancel(this.search);
+                }
+            }
+        }
+    }
+}
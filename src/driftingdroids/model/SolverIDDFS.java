@@ -32,6 +32,7 @@ public class SolverIDDFS extends Solver {
     private static final int DIRECTION_NOT_MOVED_YET = 7;
     private final int[][] obstacles = new int[MAX_DEPTH][];
     private static final int OBSTACLE_ROBOT = (1 << 4);
+    private static final int NO_REBOUND_KEY_BITS = 2;  //axis of the last move of a robot: 0 = not moved yet, 1 = north/south, 2 = east/west
     private KnownStates knownStates;
     private final int goalPosition;
     private final int minRobotLast;
@@ -39,11 +40,24 @@ public class SolverIDDFS extends Solver {
     private final boolean isSolution01, isSolution01NoSpeedup;
     private final int[] minimumMovesToGoal;
     private final int[] directionIncrement;
+    private final int[] aloneQueue, aloneVisited;   //used by canReachGoalAlone
+    private int aloneStamp = 0;
     
     private int depthLimit;
+    private boolean doDfsFast;
+    private boolean doDfsNoRebound;
+    
+    private int splitDepth = 0;         //0 = never split: the whole search tree is traversed by this instance
+    private boolean isSearchFirstSolutions = false; //see setSearchFirstSolutions
+    private int numSolutionsFound = 0;              //including duplicates, see setSearchFirstSolutions
+    private List<Subtree> subtrees;     //collects the subtrees at splitDepth, which are left to other threads
     
 
     protected SolverIDDFS(final Board board) {
+        this(board, new int[board.size]);
+    }
+    
+    private SolverIDDFS(final Board board, final int[] minimumMovesToGoal) {
         super(board);
         this.initObstacles();
         this.states = new int[MAX_DEPTH][this.board.getRobotPositions().length];
@@ -53,8 +67,10 @@ public class SolverIDDFS extends Solver {
         this.goalRobot = (this.isBoardGoalWildcard ? (null == this.board.getGoal() ? 0 : this.board.getGoal().robotNumber) : this.minRobotLast); //swapGoalLast
         this.isSolution01 = this.board.isSolution01();
         this.isSolution01NoSpeedup = (true == this.isSolution01) && ((true == this.isBoardGoalWildcard) || (4 > this.board.getNumRobots()));
-        this.minimumMovesToGoal = new int[board.size];
+        this.minimumMovesToGoal = minimumMovesToGoal;
         this.directionIncrement = this.board.directionIncrement;
+        this.aloneQueue = new int[board.size];
+        this.aloneVisited = new int[board.size];
     }
     
     
@@ -86,24 +102,12 @@ public class SolverIDDFS extends Solver {
         if (null == this.board.getGoal()) {
             Logger.println("no goal is set - nothing to solve!");
         } else {
-            this.states[0] = this.board.getRobotPositions().clone();
-            swapGoalLast(this.states[0]);   //goal robot is always the last one.
-            Arrays.fill(this.directions[0], DIRECTION_NOT_MOVED_YET);
-            this.precomputeMinimumMovesToGoal();
-            this.knownStates = new KnownStates();
-            
-            Logger.println("startState=" + this.stateString(this.states[0]));
-            Logger.println("solution01=" + this.isSolution01 + "  isSolution01NoSpeedup=" + this.isSolution01NoSpeedup);
-            Logger.println("goalWildcard=" + this.isBoardGoalWildcard);
-            Logger.println(this.knownStates.getInfo());
-            
+            this.prepareSearch(false);
             this.iddfs();
-            
-            this.solutionStoredStates = this.knownStates.size();
-            this.solutionMemoryMegabytes = this.knownStates.getMegaBytesAllocated();
-            this.knownStates = null;    //allow garbage collection
+            this.finishSearch();
         }
         this.sortSolutions();
+        this.fireSearchFinished();
         
         this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
         return this.lastResultSolutions;
@@ -111,6 +115,46 @@ public class SolverIDDFS extends Solver {
     
     
     
+    void prepareSearch(final boolean isSharedKnownStates) {
+        this.states[0] = this.board.getRobotPositions().clone();
+        swapGoalLast(this.states[0]);   //goal robot is always the last one.
+        Arrays.fill(this.directions[0], DIRECTION_NOT_MOVED_YET);
+        this.precomputeMinimumMovesToGoal();
+        this.doDfsFast = (false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds);
+        //the keys of the no-rebound states contain 2 more bits per robot, so they need their own map
+        this.doDfsNoRebound = (false == this.optAllowRebounds) && (false == this.isSolution01) && (false == isSharedKnownStates)
+                && (this.board.getNumRobots() * (this.board.sizeNumBits + NO_REBOUND_KEY_BITS) <= 64);
+        final KeyDepthMap theMap;
+        if (true == isSharedKnownStates) {
+            theMap = KeyDepthMapFactory.newInstance(this.board, KeyDepthMapConcurrent.class);
+        } else if (true == this.doDfsNoRebound) {
+            theMap = new KeyDepthMapHash(this.board.getNumRobots() * (this.board.sizeNumBits + NO_REBOUND_KEY_BITS));
+        } else {
+            theMap = KeyDepthMapFactory.newInstance(this.board, this.optMemoryLimit);
+        }
+        this.knownStates = new KnownStates(theMap, isSharedKnownStates, this.doDfsNoRebound);
+        this.knownStates.setKey(0, this.states[0]);
+        
+        Logger.println("startState=" + this.stateString(this.states[0]));
+        Logger.println("solution01=" + this.isSolution01 + "  isSolution01NoSpeedup=" + this.isSolution01NoSpeedup);
+        Logger.println("goalWildcard=" + this.isBoardGoalWildcard);
+        Logger.println(this.knownStates.getInfo());
+        Logger.println("doDfsFast=" + this.doDfsFast);
+        Logger.println("doDfsNoRebound=" + this.doDfsNoRebound);
+    }
+    
+    
+    
+    void finishSearch() {
+        this.solutionStoredStates = this.knownStates.size();
+        this.solutionMemoryMegabytes = this.knownStates.getMegaBytesAllocated();
+        this.solutionForgottenStates = this.knownStates.getForgottenStates();
+        this.knownStates.allKeys.theMap.release();  //free off-heap memory now
+        this.knownStates = null;    //allow garbage collection
+    }
+    
+    
+    
     private void precomputeMinimumMovesToGoal() {
         final boolean[] posToDo = new boolean[this.minimumMovesToGoal.length];
         Arrays.fill(this.minimumMovesToGoal, Integer.MAX_VALUE);
@@ -144,30 +188,261 @@ public class SolverIDDFS extends Solver {
     
     private void iddfs() throws InterruptedException {
         final long nanoStart = System.nanoTime();
-        final boolean doDfsFast = (false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds);
-        Logger.println("doDfsFast=" + doDfsFast);
         for (this.depthLimit = 2;  MAX_DEPTH > this.depthLimit;  ++this.depthLimit) {
             final long nanoDfs = System.nanoTime();
-            if (doDfsFast) {
-                this.dfsRecursionFast(1, -1, -1, this.states[0]);
-            } else {
-                this.dfsRecursion(1, -1, -1, this.states[0], this.directions[0]);
-            }
+            this.fireDepthStarted(this.depthLimit);
+            this.dfs(1, -1, -1);
             final long nanoEnd = System.nanoTime();
             Logger.println("iddfs:  finished depthLimit=" + this.depthLimit +
                     " megaBytes=" + this.knownStates.getMegaBytesAllocated() +
                     " time=" + (nanoEnd - nanoDfs) / 1000000L + "ms" + 
                     " totalTime=" + (nanoEnd - nanoStart) / 1000000L + "ms");
-            if (false == this.lastResultSolutions.isEmpty()) {
-                break;  //found solution(s)
+            this.fireDepthFinished(this.depthLimit, this.knownStates.size(), (nanoEnd - nanoStart) / 1000000L);
+            if ((false == this.lastResultSolutions.isEmpty()) || (true == this.isStopRequested())) {
+                break;  //found solution(s) or search has been stopped
+            }
+        }
+    }
+    
+    
+    
+    private void dfs(final int depth, final int prevRobo, final int prevDirBit0) throws InterruptedException {
+        if (this.doDfsFast) {
+            this.dfsRecursionFast(depth, prevRobo, prevDirBit0, this.states[depth - 1]);
+        } else if (this.doDfsNoRebound) {
+            this.dfsRecursionNoRebound(depth, this.states[depth - 1], this.packDirectionAxes(this.directions[depth - 1]));
+        } else {
+            this.dfsRecursion(depth, prevRobo, prevDirBit0, this.states[depth - 1], this.directions[depth - 1]);
+        }
+    }
+    
+    
+    
+    /**
+     * Runs the first plies of one depth iteration and collects the remaining subtrees
+     * instead of traversing them. Solutions that are shorter than the split depth
+     * are found directly and stored in the list of results.
+     * 
+     * @param depthLimit the depth limit of this iteration
+     * @param splitDepth the search depth at which the subtrees are collected
+     * @return list of subtrees that are to be traversed by <code>searchSubtree</code>
+     */
+    List<Subtree> collectSubtrees(final int depthLimit, final int splitDepth) throws InterruptedException {
+        this.depthLimit = depthLimit;
+        this.splitDepth = splitDepth;
+        this.subtrees = new ArrayList<Subtree>();
+        try {
+            this.dfs(1, -1, -1);
+            return this.subtrees;
+        } finally {
+            this.splitDepth = 0;
+            this.subtrees = null;
+        }
+    }
+    
+    
+    
+    /**
+     * Traverses one subtree that has been collected by <code>collectSubtrees</code>.
+     * 
+     * @param depthLimit the depth limit of this iteration
+     * @param subtree the subtree
+     */
+    void searchSubtree(final int depthLimit, final Subtree subtree) throws InterruptedException {
+        this.depthLimit = depthLimit;
+        for (int i = 0;  i < subtree.depth;  ++i) {
+            System.arraycopy(subtree.states[i], 0, this.states[i], 0, this.states[i].length);
+            System.arraycopy(subtree.directions[i], 0, this.directions[i], 0, this.directions[i].length);
+        }
+        this.knownStates.setKey(subtree.depth - 1, this.states[subtree.depth - 1]);
+        this.dfs(subtree.depth, subtree.prevRobo, subtree.prevDirBit0);
+    }
+    
+    
+    
+    /**
+     * Switches the search of the shared known states (see <code>prepareSearch</code>) to finding
+     * the first solution of each subtree (see <code>searchFirstSolution</code>). Then a state is
+     * pruned only if it's known with a greater remaining depth, or if it's known that there is
+     * no solution below it, so the first solution doesn't depend on the order in which the threads
+     * visit the states. This must be called before the search, and before the workers are created.
+     */
+    void setSearchFirstSolutions() {
+        this.isSearchFirstSolutions = true;
+        ((KeyDepthMapConcurrent)this.knownStates.allKeys.theMap).setPutIfGreaterOrEqual(true);
+    }
+    
+    /**
+     * Traverses one subtree like <code>searchSubtree</code>, but stops at the first solution
+     * (see <code>setSearchFirstSolutions</code>). The solution is not stored in the list of results.
+     * 
+     * @param depthLimit the depth limit of this iteration
+     * @param subtree the subtree
+     * @return the first solution in the order of the moves, or <code>null</code> if there is none
+     */
+    Solution searchFirstSolution(final int depthLimit, final Subtree subtree) throws InterruptedException {
+        final List<Solution> resultSolutions = this.lastResultSolutions;
+        this.lastResultSolutions = new ArrayList<Solution>();
+        try {
+            this.searchSubtree(depthLimit, subtree);
+            return (this.lastResultSolutions.isEmpty() ? null : this.lastResultSolutions.get(0));
+        } finally {
+            this.lastResultSolutions = resultSolutions;
+        }
+    }
+    
+    
+    
+    /**
+     * Creates a new instance that shares the precomputed data, the known states
+     * and the list of results with this instance. It's used by a worker thread
+     * to traverse subtrees of the search tree.
+     * 
+     * @return new instance for use by another thread
+     */
+    SolverIDDFS createWorker() {
+        final SolverIDDFS worker = new SolverIDDFS(this.board, this.minimumMovesToGoal);
+        worker.optSolutionMode = this.optSolutionMode;
+        worker.optAllowRebounds = this.optAllowRebounds;
+        worker.lastResultSolutions = this.lastResultSolutions;
+        worker.knownStates = new KnownStates(this.knownStates.allKeys.theMap, true, false);  //own key maker, shared map
+        worker.doDfsFast = this.doDfsFast;
+        worker.isSearchFirstSolutions = this.isSearchFirstSolutions;
+        this.shareListenersWith(worker);
+        return worker;
+    }
+    
+    
+    
+    void setResultSolutions(final List<Solution> resultSolutions) {
+        this.lastResultSolutions = resultSolutions;
+    }
+    
+    
+    
+    int getKnownStatesMegaBytesAllocated() {
+        return this.knownStates.getMegaBytesAllocated();
+    }
+    
+    int getKnownStatesSize() {
+        return this.knownStates.size();
+    }
+    
+    
+    
+    static final class Subtree {
+        private final int depth, prevRobo, prevDirBit0;
+        private final int[][] states, directions;
+        private Subtree(final int depth, final int prevRobo, final int prevDirBit0, final int[][] states, final int[][] directions) {
+            this.depth = depth;
+            this.prevRobo = prevRobo;
+            this.prevDirBit0 = prevDirBit0;
+            this.states = new int[depth][];
+            this.directions = new int[depth][];
+            for (int i = 0;  i < depth;  ++i) {
+                this.states[i] = states[i].clone();
+                this.directions[i] = directions[i].clone();
+            }
+        }
+        //true if both subtrees begin with the same move. both must have a depth of at least 2.
+        boolean hasSameFirstMove(final Subtree other) {
+            return Arrays.equals(this.states[1], other.states[1]);
+        }
+    }
+    
+    
+    
+    /**
+     * Strengthens the lower bound of <code>minimumMovesToGoal</code> for the states
+     * in which the helper robots are not allowed to move anymore, because there are
+     * no moves left for them (<code>minimumMovesToGoal == height</code>).
+     * <p>
+     * <code>minimumMovesToGoal</code> assumes that the goal robot can stop at any
+     * position, even in the middle of a free path. That is only true if a helper robot
+     * has been placed there first, which costs at least one more move.
+     * So the number of moves to goal is at least <code>min(alone, minimumMovesToGoal + 1)</code>,
+     * where <code>alone</code> is the number of moves the goal robot needs if the other
+     * robots stay where they are. This method computes <code>alone</code> by a
+     * breadth-first search that is limited to <code>maxMoves</code>.
+     * <p>
+     * This bound is never larger than <code>minimumMovesToGoal + 1</code>, so it doesn't
+     * replace the table: it can only cut the states where <code>minimumMovesToGoal == height</code>.
+     * 
+     * @param obstacles the obstacles of the current depth, including the robot positions
+     * @param state the current robot positions
+     * @param maxMoves the number of moves left
+     * @return true if a goal robot can reach the goal alone in <code>maxMoves</code> or less moves
+     */
+    private boolean canReachGoalAlone(final int[] obstacles, final int[] state, final int maxMoves) {
+        if (true == this.isBoardGoalWildcard) {
+            for (final int pos : state) {
+                if ((this.minimumMovesToGoal[pos] <= maxMoves) && (true == this.canReachGoalAlone(obstacles, pos, maxMoves))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return this.canReachGoalAlone(obstacles, state[this.goalRobot], maxMoves);
+    }
+    
+    private boolean canReachGoalAlone(final int[] obstacles, final int startPos, final int maxMoves) {
+        if (0 == ++this.aloneStamp) {
+            Arrays.fill(this.aloneVisited, 0);
+            this.aloneStamp = 1;
+        }
+        final int stamp = this.aloneStamp;
+        final int[] queue = this.aloneQueue;
+        obstacles[startPos] ^= OBSTACLE_ROBOT;  //the goal robot itself is not an obstacle
+        this.aloneVisited[startPos] = stamp;
+        queue[0] = startPos;
+        int head = 0, tail = 1;
+        boolean result = false;
+        levels:
+        for (int moves = 1;  (moves <= maxMoves) && (head < tail);  ++moves) {
+            final int movesLeft = maxMoves - moves;
+            for (final int levelEnd = tail;  head < levelEnd;  ) {
+                final int oldRoboPos = queue[head++];
+                final int obstacleInit = obstacles[oldRoboPos];
+                int dir = 0;
+                for (final int dirIncr : this.directionIncrement) {
+                    int newRoboPos = oldRoboPos;
+                    int obstacle = obstacleInit;
+                    final int wallMask = (1 << dir);
+                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
+                        newRoboPos += dirIncr;
+                        obstacle = obstacles[newRoboPos];
+                        if (0 != (obstacle & OBSTACLE_ROBOT)) {
+                            newRoboPos -= dirIncr;
+                            break;
+                        }
+                    }
+                    if (this.goalPosition == newRoboPos) {
+                        result = true;
+                        break levels;
+                    }
+                    if ((stamp != this.aloneVisited[newRoboPos]) && (this.minimumMovesToGoal[newRoboPos] <= movesLeft)) {
+                        this.aloneVisited[newRoboPos] = stamp;
+                        queue[tail++] = newRoboPos;
+                    }
+                    ++dir;
+                }
             }
         }
+        obstacles[startPos] ^= OBSTACLE_ROBOT;
+        return result;
     }
     
     
     
     // standard version: supports wildcard goal, solution01 special case and option noRebounds
     private void dfsRecursion(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int[] oldDirs) throws InterruptedException {
+        if (true == this.isStopRequested()) {
+            return; //search has been stopped: leave all subtrees
+        }
+        if (this.splitDepth == depth) {
+            this.subtrees.add(new Subtree(depth, prevRobo, prevDirBit0, this.states, this.directions));
+            return; //leave this subtree to another thread
+        }
         final int height = this.depthLimit - depth + 1;
         final int minMovesToGoal;
         if (true == this.isBoardGoalWildcard) {
@@ -186,7 +461,14 @@ public class SolverIDDFS extends Solver {
         final int[] obstacles = this.obstacles[depth];
         final int[] newState = this.states[depth];
         final int depth1 = depth + 1;
-        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+        if (minMovesToGoal == height) {
+            for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+            final boolean canReachGoalAlone = this.canReachGoalAlone(obstacles, oldState, height);
+            for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+            if (false == canReachGoalAlone) {
+                return; //no moves left for the helper robots, and the goal robot can't reach goal alone
+            }
+        }
         System.arraycopy(oldState, 0, newState, 0, oldState.length);
         final boolean doRecursion = (this.depthLimit > depth1);
         //move all robots
@@ -198,52 +480,54 @@ public class SolverIDDFS extends Solver {
                 continue;   //useless to move this robot: can't reach goal
             }
             final int oldDir = oldDirs[robo];
-            final int obstacleInit = obstacles[oldRoboPos];
-            int dir = 0;
-            for (final int dirIncr : this.directionIncrement) {
+            for (int dir = 0;  dir < 4;  ++dir) {
                 if (((true == this.optAllowRebounds) || ((oldDir != dir) && (oldDir != (dir ^ 2)))) // (dir + 2) & 3
                         && ((prevRobo != robo) || (prevDirBit0 != (dir & 1)))) {
-                    int newRoboPos = oldRoboPos;
-                    int obstacle = obstacleInit;
-                    final int wallMask = (1 << dir);
-                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
-                        newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
-                        obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
-                        if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
-                            newRoboPos -= dirIncr;
-                            break;
-                        }
-                    }
+                    final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
                     //the robot has actually moved
                     //special case (isSolution01): the goal robot has _NOT_ arrived at the goal
                     if ((oldRoboPos != newRoboPos)
                             && ((false == this.isSolution01) || !((this.goalPosition == newRoboPos) && (true == isGoalRobot)))) {
                         newState[robo] = newRoboPos;
+                        this.knownStates.moveKey(depth, robo, oldRoboPos, newRoboPos);
                         //special case (isSolution01): we must be able to visit states more than once, so we don't add them to knownStates
                         //the new state is not already known (i.e. stored in knownStates)
-                        if (this.isSolution01NoSpeedup || (this.isSolution01 && isGoalRobot) || (this.knownStates.add(newState, height))) {
+                        if (this.isSolution01NoSpeedup || (this.isSolution01 && isGoalRobot) || (this.knownStates.add(newState, depth, height))) {
                             final int[] newDirs = this.directions[depth];
                             System.arraycopy(oldDirs, 0, newDirs, 0, oldDirs.length);
                             newDirs[robo] = dir;
+                            final int numSolutionsBefore = this.numSolutionsFound;
                             if (true == doRecursion) {
                                 this.dfsRecursion(depth1, robo, (dir & 1), newState, newDirs);
                             } else {
                                 this.dfsLast(depth1, robo, (dir & 1), newState, newDirs);
                             }
+                            if ((true == this.isSearchFirstSolutions) && (0 == this.splitDepth)) {
+                                if (numSolutionsBefore != this.numSolutionsFound) {
+                                    return; //found the first solution of this subtree
+                                } else if ((false == this.isSolution01NoSpeedup) && !(this.isSolution01 && isGoalRobot)) {
+                                    this.knownStates.add(newState, depth, height + 1);  //no solution below: don't search it again at this depth
+                                }
+                            }
                         }
                     }
                 }
-                ++dir;
             }
             newState[robo++] = oldRoboPos;
         }
-        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
     }
     
     
     
     // fast version: (false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds)
     private void dfsRecursionFast(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
+        if (true == this.isStopRequested()) {
+            return; //search has been stopped: leave all subtrees
+        }
+        if (this.splitDepth == depth) {
+            this.subtrees.add(new Subtree(depth, prevRobo, prevDirBit0, this.states, this.directions));
+            return; //leave this subtree to another thread
+        }
         final int minMovesToGoal = this.minimumMovesToGoal[oldState[this.goalRobot]];
         final int height = this.depthLimit - depth + 1;
         if (minMovesToGoal > height) {
@@ -252,7 +536,14 @@ public class SolverIDDFS extends Solver {
         final int[] obstacles = this.obstacles[depth];
         final int[] newState = this.states[depth];
         final int depth1 = depth + 1;
-        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+        if (minMovesToGoal == height) {
+            for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+            final boolean canReachGoalAlone = this.canReachGoalAlone(obstacles, oldState, height);
+            for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+            if (false == canReachGoalAlone) {
+                return; //no moves left for the helper robots, and the goal robot can't reach goal alone
+            }
+        }
         final boolean doRecursion = (this.depthLimit > depth1);
         System.arraycopy(oldState, 0, newState, 0, oldState.length);
         //move all robots
@@ -261,40 +552,114 @@ public class SolverIDDFS extends Solver {
             if ((minMovesToGoal == height) && (this.goalRobot != robo)) {
                 ++robo; //useless to move this robot: can't reach goal
             } else {
-                final int obstacleInit = obstacles[oldRoboPos];
-                int dir = 0;
-                for (final int dirIncr : this.directionIncrement) {
+                for (int dir = 0;  dir < 4;  ++dir) {
                     if ((prevRobo != robo) || (prevDirBit0 != (dir & 1))) {
-                        int newRoboPos = oldRoboPos;
-                        int obstacle = obstacleInit;
-                        final int wallMask = (1 << dir);
-                        while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
-                            newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
-                            obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
-                            if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
-                                newRoboPos -= dirIncr;
-                                break;
-                            }
-                        }
+                        final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
                         //the robot has actually moved
                         if (oldRoboPos != newRoboPos) {
                             newState[robo] = newRoboPos;
+                            this.knownStates.moveKey(depth, robo, oldRoboPos, newRoboPos);
                             //the new state is not already known (i.e. stored in knownStates)
-                            if (true == this.knownStates.add(newState, height)) {
+                            if (true == this.knownStates.add(newState, depth, height)) {
+                                final int numSolutionsBefore = this.numSolutionsFound;
                                 if (true == doRecursion) {
                                     this.dfsRecursionFast(depth1, robo, (dir & 1), newState);
                                 } else {
                                     this.dfsLastFast(depth1, robo, (dir & 1), newState);
                                 }
+                                if ((true == this.isSearchFirstSolutions) && (0 == this.splitDepth)) {
+                                    if (numSolutionsBefore != this.numSolutionsFound) {
+                                        return; //found the first solution of this subtree
+                                    }
+                                    this.knownStates.add(newState, depth, height + 1);  //no solution below: don't search it again at this depth
+                                }
+                            }
+                        }
+                    }
+                }
+                newState[robo++] = oldRoboPos;
+            }
+        }
+    }
+    
+    
+    
+    private int getMinimumMovesToGoalWildcard(final int[] state) {
+        int min = Integer.MAX_VALUE;
+        for (final int pos : state) {
+            final int tmp = this.minimumMovesToGoal[pos];
+            if (min > tmp) { min = tmp; }
+        }
+        return min;
+    }
+    
+    
+    
+    // no-rebound version: (false == this.optAllowRebounds) && (false == this.isSolution01) && (knownStates not shared)
+    // dirs contains the axis of the last move of each robot (NO_REBOUND_KEY_BITS per robot), instead of the directions arrays.
+    // a robot can't move along the axis of its last move, which includes the rule (prevRobo, prevDirBit0) of the other versions.
+    private void dfsRecursionNoRebound(final int depth, final int[] oldState, final int oldDirs) throws InterruptedException {
+        if (true == this.isStopRequested()) {
+            return; //search has been stopped: leave all subtrees
+        }
+        final int height = this.depthLimit - depth + 1;
+        final int minMovesToGoal = (true == this.isBoardGoalWildcard ? this.getMinimumMovesToGoalWildcard(oldState) : this.minimumMovesToGoal[oldState[this.goalRobot]]);
+        if (minMovesToGoal > height) {
+            return; //useless to move any robot: can't reach goal
+        }
+        final int[] obstacles = this.obstacles[depth];
+        final int[] newState = this.states[depth];
+        final int depth1 = depth + 1;
+        if (minMovesToGoal == height) {
+            for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+            final boolean canReachGoalAlone = this.canReachGoalAlone(obstacles, oldState, height);
+            for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+            if (false == canReachGoalAlone) {
+                return; //no moves left for the helper robots, and the goal robot can't reach goal alone
+            }
+        }
+        final boolean doRecursion = (this.depthLimit > depth1);
+        System.arraycopy(oldState, 0, newState, 0, oldState.length);
+        //move all robots
+        int robo = 0;
+        for (final int oldRoboPos : oldState) {
+            if ((minMovesToGoal == height) && (this.goalRobot != robo) && (this.goalRobot >= 0)) {
+                ++robo; //useless to move this robot: can't reach goal
+            } else {
+                final int shift = robo * NO_REBOUND_KEY_BITS;
+                final int oldAxis = (oldDirs >>> shift) & 3;
+                for (int dir = 0;  dir < 4;  ++dir) {
+                    final int newAxis = (dir & 1) + 1;
+                    if (oldAxis != newAxis) {
+                        final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
+                        //the robot has actually moved
+                        if (oldRoboPos != newRoboPos) {
+                            newState[robo] = newRoboPos;
+                            final int newDirs = (oldDirs & ~(3 << shift)) | (newAxis << shift);
+                            //the new state is not already known (i.e. stored in knownStates)
+                            if (true == this.knownStates.addNoRebound(newState, newDirs, height)) {
+                                if (true == doRecursion) {
+                                    this.dfsRecursionNoRebound(depth1, newState, newDirs);
+                                } else {
+                                    this.dfsLastNoRebound(depth1, newState, newDirs);
+                                }
                             }
                         }
                     }
-                    ++dir;
                 }
                 newState[robo++] = oldRoboPos;
             }
         }
-        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    private int packDirectionAxes(final int[] dirs) {
+        int result = 0;
+        for (int robo = 0;  robo < dirs.length;  ++robo) {
+            if (DIRECTION_NOT_MOVED_YET != dirs[robo]) {
+                result |= ((dirs[robo] & 1) + 1) << (robo * NO_REBOUND_KEY_BITS);
+            }
+        }
+        return result;
     }
     
     
@@ -302,28 +667,14 @@ public class SolverIDDFS extends Solver {
     // standard version: supports wildcard goal, solution01 special case and option noRebounds
     private void dfsLast(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int[] oldDirs) throws InterruptedException {
         if (Thread.interrupted()) { throw new InterruptedException(); }
-        final int[] obstacles = this.obstacles[depth];
-        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
         //move goal robot(s) only
         for (int robo = this.minRobotLast;  robo < oldState.length;  ++robo) {
             final int oldRoboPos = oldState[robo];
             final int oldDir = oldDirs[robo];
-            final int obstacleInit = obstacles[oldRoboPos];
-            int dir = 0;
-            for (final int dirIncr : this.directionIncrement) {
+            for (int dir = 0;  dir < 4;  ++dir) {
                 if (((true == this.optAllowRebounds) || ((oldDir != dir) && (oldDir != (dir ^ 2)))) // (dir + 2) & 3
                     && ((prevRobo != robo) || (prevDirBit0 != (dir & 1)))) {
-                    int newRoboPos = oldRoboPos;
-                    int obstacle = obstacleInit;
-                    final int wallMask = (1 << dir);
-                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
-                        newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
-                        obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
-                        if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
-                            newRoboPos -= dirIncr;
-                            break;
-                        }
-                    }
+                    final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
                     //the robot has arrived at the goal
                     if ((this.goalPosition == newRoboPos) && hasPerpendicularMove(depth, robo, dir)) {
                         System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
@@ -331,10 +682,8 @@ public class SolverIDDFS extends Solver {
                         this.buildSolution(depth);
                     }
                 }
-                ++dir;
             }
         }
-        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
     }
     
     
@@ -342,25 +691,11 @@ public class SolverIDDFS extends Solver {
     // fast version: (false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds)
     private void dfsLastFast(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
         if (Thread.interrupted()) { throw new InterruptedException(); }
-        final int[] obstacles = this.obstacles[depth];
         final int oldRoboPos = oldState[this.goalRobot];
-        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
-        int dir = 0;
-        final int obstacleInit = obstacles[oldRoboPos];
         //move goal robot only
-        for (final int dirIncr : this.directionIncrement) {
+        for (int dir = 0;  dir < 4;  ++dir) {
             if ((prevRobo != this.goalRobot) || (prevDirBit0 != (dir & 1))) {
-                int newRoboPos = oldRoboPos;
-                int obstacle = obstacleInit;
-                final int wallMask = (1 << dir);
-                while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
-                    newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
-                    obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
-                    if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
-                        newRoboPos -= dirIncr;
-                        break;
-                    }
-                }
+                final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
                 //the robot has arrived at the goal
                 if (this.goalPosition == newRoboPos) {
                     System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
@@ -368,9 +703,33 @@ public class SolverIDDFS extends Solver {
                     this.buildSolution(depth);
                 }
             }
-            ++dir;
         }
-        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    
+    
+    // no-rebound version: (false == this.optAllowRebounds) && (false == this.isSolution01) && (knownStates not shared)
+    private void dfsLastNoRebound(final int depth, final int[] oldState, final int oldDirs) throws InterruptedException {
+        if (Thread.interrupted()) { throw new InterruptedException(); }
+        //move goal robot(s) only
+        for (int robo = this.minRobotLast;  robo < oldState.length;  ++robo) {
+            final int oldAxis = (oldDirs >>> (robo * NO_REBOUND_KEY_BITS)) & 3;
+            if (0 == oldAxis) {
+                continue;   //the robot has not moved yet, so it can't ricochet (see hasPerpendicularMove)
+            }
+            final int oldRoboPos = oldState[robo];
+            for (int dir = 0;  dir < 4;  ++dir) {
+                if (oldAxis != (dir & 1) + 1) {
+                    final int newRoboPos = this.moveRobot(oldState, oldRoboPos, dir);   //move the robot until it reaches a wall or another robot.
+                    //the robot has arrived at the goal
+                    if (this.goalPosition == newRoboPos) {
+                        System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
+                        this.states[depth][robo] = newRoboPos;
+                        this.buildSolution(depth);
+                    }
+                }
+            }
+        }
     }
     
     
@@ -390,6 +749,7 @@ public class SolverIDDFS extends Solver {
     
     
     private void buildSolution(final int depth) {
+        ++this.numSolutionsFound;
         Solution newSolution = new Solution(this.board);
         int[] state0 = this.states[0].clone();
         swapGoalLast(state0);
@@ -401,8 +761,15 @@ public class SolverIDDFS extends Solver {
         }
         newSolution = newSolution.finish();
         Logger.println(newSolution.toMovelistString() + " " + newSolution.toString() + " finalState=" + this.stateString(states[depth]));
-        if (false == this.lastResultSolutions.contains(newSolution)) {
-            this.lastResultSolutions.add(newSolution);
+        final boolean isNewSolution;
+        synchronized (this.lastResultSolutions) {   //may be shared by worker threads
+            isNewSolution = (false == this.lastResultSolutions.contains(newSolution));
+            if (true == isNewSolution) {
+                this.lastResultSolutions.add(newSolution);
+            }
+        }
+        if (true == isNewSolution) {
+            this.fireSolutionFound(newSolution);
         }
     }
     
@@ -410,17 +777,79 @@ public class SolverIDDFS extends Solver {
     
     private class KnownStates {
         private final AllKeys allKeys;
+        private final boolean isShared;
+        private final long memoryLimit;     //0 = no limit. a shared map has no limit.
+        private long checkedBytes = -1;     //allocated bytes of the map at the last check of the memory limit
+        private long peakBytesAllocated = 0, forgottenStates = 0;
         
-        public KnownStates() {
-            this.allKeys = (board.sizeNumBits * (board.getNumRobots() - (isSolution01 ? 1 : 0)) <= 32) ? new AllKeysInt() : new AllKeysLong();
+        private final long[][] zobristCodes;    //[robot][position], null if the map doesn't use Zobrist keys
+        private final long[] zobristKeys;       //[depth] = Zobrist key of states[depth]
+        private final AllKeysNoRebound noReboundKeys;   //null if the keys don't contain the axes of the last moves
+        
+        public KnownStates(final KeyDepthMap theMap, final boolean isShared, final boolean isNoRebound) {
+            this.isShared = isShared;
+            this.memoryLimit = (isShared ? 0 : optMemoryLimit);
+            this.noReboundKeys = (isNoRebound ? new AllKeysNoRebound(theMap) : null);
+            if (true == isNoRebound) {
+                this.zobristCodes = null;
+                this.zobristKeys = null;
+                this.allKeys = this.noReboundKeys;
+            } else if (theMap instanceof KeyDepthMapZobrist) {
+                this.zobristCodes = createZobristCodes();
+                this.zobristKeys = new long[MAX_DEPTH];
+                this.allKeys = new AllKeysZobrist(theMap);
+            } else {
+                this.zobristCodes = null;
+                this.zobristKeys = null;
+                this.allKeys = (board.sizeNumBits * (board.getNumRobots() - (isSolution01 ? 1 : 0)) <= 32) ? new AllKeysInt(theMap) : new AllKeysLong(theMap);
+            }
+        }
+        
+        //random codes of the robot positions: the helper robots share the same codes, because
+        //they can be substituted for each other. the goal robot has its own codes (it's the last
+        //robot, see swapGoalLast), unless it's not part of the key (isSolution01).
+        //with the wildcard goal all robots can be substituted for each other.
+        private long[][] createZobristCodes() {
+            final long[] helperCodes = new long[board.size], goalCodes = new long[board.size];
+            long seed = 0x2545f4914f6cdd1dL;
+            for (int pos = 0;  pos < board.size;  ++pos) {
+                helperCodes[pos] = (seed = nextZobristCode(seed));
+                goalCodes[pos] = (seed = nextZobristCode(seed));
+            }
+            final long[][] result = new long[board.getNumRobots()][];
+            for (int robo = 0;  robo < result.length;  ++robo) {
+                result[robo] = helperCodes;
+            }
+            if (true == isSolution01) {
+                result[result.length - 1] = new long[board.size];
+            } else if (false == isBoardGoalWildcard) {
+                result[result.length - 1] = goalCodes;
+            }
+            return result;
+        }
+        
+        //SplitMix64: the result is the next code, and it's also the next seed
+        private long nextZobristCode(final long seed) {
+            long z = seed + 0x9e3779b97f4a7c15L;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+        
+        private long getZobristKey(final int[] state) {
+            long key = 0;
+            for (int robo = 0;  robo < state.length;  ++robo) {
+                key ^= this.zobristCodes[robo][state[robo]];
+            }
+            return key;
         }
         
         //store the unique keys of all known states
         private abstract class AllKeys {
-            protected final KeyDepthMap theMap;
+            protected KeyDepthMap theMap;
             
-            protected AllKeys() {
-                this.theMap = KeyDepthMapFactory.newInstance(board);
+            protected AllKeys(final KeyDepthMap theMap) {
+                this.theMap = theMap;
             }
             
             public abstract boolean add(final int[] state, final int depth);
@@ -435,8 +864,8 @@ public class SolverIDDFS extends Solver {
         //supports up to 4 robots with a board size of 256 (16*16)
         private final class AllKeysInt extends AllKeys {
             private final KeyMakerInt keyMaker = KeyMakerInt.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard, isSolution01);
-            public AllKeysInt() {
-                super();
+            public AllKeysInt(final KeyDepthMap theMap) {
+                super(theMap);
             }
             @Override
             public final boolean add(final int[] state, final int depth) {
@@ -448,12 +877,52 @@ public class SolverIDDFS extends Solver {
                 return this.getClass().getSimpleName() + "," + this.theMap.getClass().getSimpleName() + "," + (null == this.keyMaker ? "n/a" : this.keyMaker.getClass().getSimpleName());
             }
         }
+        //store the Zobrist keys of all known states in 64-bit longs
+        //supports any number of robots and any board size
+        private final class AllKeysZobrist extends AllKeys {
+            public AllKeysZobrist(final KeyDepthMap theMap) {
+                super(theMap);
+            }
+            @Override
+            public final boolean add(final int[] state, final int depth) {
+                return this.theMap.putIfGreater(getZobristKey(state), depth);
+            }
+            @Override
+            public String getInfo() {
+                return this.getClass().getSimpleName() + "," + this.theMap.getClass().getSimpleName();
+            }
+        }
+        //store the unique keys of all known states plus the axes of the last moves (option noRebounds) in 64-bit longs
+        //supports up to 64 / (board.sizeNumBits + NO_REBOUND_KEY_BITS) robots
+        private final class AllKeysNoRebound extends AllKeys {
+            private final KeyMakerLong keyMaker = KeyMakerLong.createInstance(board.getNumRobots(), board.sizeNumBits + NO_REBOUND_KEY_BITS, isBoardGoalWildcard, isSolution01);
+            private final int[] tmpState = new int[board.getNumRobots()];
+            public AllKeysNoRebound(final KeyDepthMap theMap) {
+                super(theMap);
+            }
+            @Override
+            public final boolean add(final int[] state, final int depth) {
+                return this.add(state, 0, depth);
+            }
+            public final boolean add(final int[] state, final int dirs, final int depth) {
+                //the axis bits are above the position bits, so the key maker sorts the robots by (axis, position)
+                for (int robo = 0;  robo < state.length;  ++robo) {
+                    this.tmpState[robo] = state[robo] | (((dirs >>> (robo * NO_REBOUND_KEY_BITS)) & 3) << board.sizeNumBits);
+                }
+                final long key = this.keyMaker.run(this.tmpState);
+                return this.theMap.putIfGreater(key, depth);
+            }
+            @Override
+            public String getInfo() {
+                return this.getClass().getSimpleName() + "," + this.theMap.getClass().getSimpleName() + "," + this.keyMaker.getClass().getSimpleName();
+            }
+        }
         //store the unique keys of all known states in 64-bit longs
         //supports more than 4 robots and/or board sizes larger than 256
         private final class AllKeysLong extends AllKeys {
             private final KeyMakerLong keyMaker = KeyMakerLong.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard, isSolution01);
-            public AllKeysLong() {
-                super();
+            public AllKeysLong(final KeyDepthMap theMap) {
+                super(theMap);
             }
             @Override
             public final boolean add(final int[] state, final int depth) {
@@ -466,17 +935,71 @@ public class SolverIDDFS extends Solver {
             }
         }
 
-        public boolean add(int[] state, int depth) {
-            return this.allKeys.add(state, depth);
+        //set the key of the state at this depth, which has not been created by moveKey
+        public final void setKey(final int depth, final int[] state) {
+            if (null != this.zobristCodes) {
+                this.zobristKeys[depth] = this.getZobristKey(state);
+            }
+        }
+        //update the key of the state at this depth: one robot has moved, compared to the state at depth-1
+        public final void moveKey(final int depth, final int robo, final int oldPos, final int newPos) {
+            if (null != this.zobristCodes) {
+                final long[] codes = this.zobristCodes[robo];
+                this.zobristKeys[depth] = this.zobristKeys[depth - 1] ^ codes[oldPos] ^ codes[newPos];
+            }
+        }
+        //state must be states[stateDepth]. height is the value to be stored.
+        public final boolean add(final int[] state, final int stateDepth, final int height) {
+            if (0 != this.memoryLimit) {
+                this.checkMemoryLimit();
+            }
+            if (null != this.zobristCodes) {
+                return this.allKeys.theMap.putIfGreater(this.zobristKeys[stateDepth], height);
+            }
+            return this.allKeys.add(state, height);
+        }
+        //option noRebounds: dirs contains the axis of the last move of each robot (see dfsRecursionNoRebound)
+        public final boolean addNoRebound(final int[] state, final int dirs, final int height) {
+            if (0 != this.memoryLimit) {
+                this.checkMemoryLimit();
+            }
+            return this.noReboundKeys.add(state, dirs, height);
+        }
+        //replace the map by a map of fixed size before its next allocation would exceed the memory limit.
+        //the check runs before each add, but it compares only when the map has allocated a new chunk.
+        private void checkMemoryLimit() {
+            final long bytes = this.allKeys.getBytesAllocated();
+            if (bytes == this.checkedBytes) {
+                return;
+            }
+            this.checkedBytes = bytes;
+            if ((bytes + this.allKeys.theMap.nextAllocationBytes() > this.memoryLimit) && (false == (this.allKeys.theMap instanceof KeyDepthMapBounded))) {
+                Logger.println("KnownStates: memory limit reached: megaBytes=" + (bytes >> 20) + " size=" + this.allKeys.theMap.size()
+                        + " depthLimit=" + depthLimit + " -> continue with KeyDepthMapBounded");
+                this.peakBytesAllocated = bytes;
+                this.forgottenStates = this.allKeys.theMap.size();
+                this.allKeys.theMap.release();
+                this.allKeys.theMap = null;     //allow garbage collection before the new map is allocated
+                this.allKeys.theMap = new KeyDepthMapBounded(this.memoryLimit);
+            }
+        }
+        public final long getForgottenStates() {
+            long result = this.forgottenStates;
+            if (this.allKeys.theMap instanceof KeyDepthMapBounded) {
+                final KeyDepthMapBounded bounded = (KeyDepthMapBounded)this.allKeys.theMap;
+                result += bounded.getNumReplaced() + bounded.getNumDropped();
+            }
+            return result;
         }
         public final int size() {
             return this.allKeys.theMap.size();
         }
         public final int getMegaBytesAllocated() {
-            return (int)((this.allKeys.getBytesAllocated() + (1 << 20) - 1) >> 20);
+            final long bytes = Math.max(this.peakBytesAllocated, this.allKeys.getBytesAllocated());
+            return (int)((bytes + (1 << 20) - 1) >> 20);
         }
         public String getInfo() {
-            return "KnownStates(" + this.allKeys.getInfo() + ")";
+            return "KnownStates(" + this.allKeys.getInfo() + (this.isShared ? ",shared" : "") + ")";
         }
     }
 
@@ -0,0 +1,70 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.List;
+
+/**
+ * This interface receives the progress events of a running <code>Solver</code>.
+ * <p>
+ * The methods are called by the thread that runs <code>Solver.execute()</code>,
+ * except <code>solutionFound</code>, which may also be called by the worker threads
+ * of a multi-threaded solver. The methods should return quickly, because the search
+ * waits for them. A listener may call <code>Solver.stopSearch()</code> at any time,
+ * for example as soon as the first solution has been found.
+ */
+public interface SolverListener {
+
+    /**
+     * The search of a new depth has started. This is the depth limit of an
+     * iterative deepening search, or the level of a breadth-first search.
+     *
+     * @param solver the solver that sends this event
+     * @param depth the depth (number of moves) that is searched now
+     */
+    public void depthStarted(Solver solver, int depth);
+
+    /**
+     * The search of a depth has finished.
+     *
+     * @param solver the solver that sends this event
+     * @param depth the depth (number of moves) that has been searched
+     * @param storedStates number of states that are stored by the solver now
+     * @param elapsedMilliSeconds time since the start of the search
+     */
+    public void depthFinished(Solver solver, int depth, int storedStates, long elapsedMilliSeconds);
+
+    /**
+     * A new solution has been found. It's called as soon as the solution has been built,
+     * so the search may still find other solutions of the same length.
+     *
+     * @param solver the solver that sends this event
+     * @param solution the new solution
+     */
+    public void solutionFound(Solver solver, Solution solution);
+
+    /**
+     * The search has finished (or it has been stopped by <code>Solver.stopSearch()</code>).
+     * It's not called if the search has been interrupted.
+     *
+     * @param solver the solver that sends this event
+     * @param solutions the result of the search, sorted as returned by <code>Solver.execute()</code>
+     */
+    public void searchFinished(Solver solver, List<Solution> solutions);
+
+}
@@ -0,0 +1,269 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+
+/**
+ * This is a multi-threaded version of the IDDFS solver.
+ * <p>
+ * In each iteration of the iterative deepening, the first plies of the search tree are
+ * traversed by the calling thread. The subtrees below these plies are then handed to
+ * a work-stealing pool of worker threads. All threads share the same known states.
+ * <p>
+ * The single-threaded solver prunes a state if it's known with the same remaining depth,
+ * so its solutions depend on the order in which the states are visited. This solver
+ * prunes a state only if it's known with a greater remaining depth, or if it's known
+ * that there is no solution below it. Each worker stops at the first solution of its
+ * subtree, and the result is the first solution (in the order of the moves) that begins
+ * with each of the possible first moves. So the result doesn't depend on the order of
+ * the threads. It may differ from the solutions of the single-threaded solver, but the
+ * solutions have the same length. Solutions that are shorter than three moves are all found.
+ * <p>
+ * Limitation: without rebound moves the keys of the states contain the directions of the
+ * last moves, which the shared known states can't store. So this solver just runs the
+ * single-threaded solver in this case, see <code>setOptionParallelism</code>.
+ */
+public class SolverParallelIDDFS extends Solver {
+    
+    private static final int MAX_DEPTH = 126;
+    
+    private int optParallelism = Runtime.getRuntime().availableProcessors();
+    
+    
+    
+    protected SolverParallelIDDFS(final Board board) {
+        super(board);
+    }
+    
+    
+    
+    /**
+     * Sets the number of worker threads. It's used only if rebound moves are allowed
+     * (see <code>setOptionAllowRebounds</code>), else the search is single-threaded.
+     * 
+     * @param parallelism number of worker threads (default: number of processors)
+     */
+    public final void setOptionParallelism(final int parallelism) {
+        this.optParallelism = Math.max(1, parallelism);
+    }
+    
+    public final int getOptionParallelism() {
+        return this.optParallelism;
+    }
+    
+    
+    
+    @Override
+    public List<Solution> execute() throws InterruptedException {
+        final long startExecute = System.nanoTime();
+        this.lastResultSolutions = new ArrayList<Solution>();
+    
+        Logger.println("***** " + this.getClass().getSimpleName() + " *****");
+        Logger.println("options: " + this.getOptionsAsString() + "; parallelism " + this.optParallelism);
+    
+        if (null == this.board.getGoal()) {
+            Logger.println("no goal is set - nothing to solve!");
+        } else if (false == this.optAllowRebounds) {
+            Logger.println("no rebound moves: using the single-threaded solver");
+            final SolverIDDFS solver = new SolverIDDFS(this.board);
+            solver.setOptionSolutionMode(this.optSolutionMode);
+            solver.setOptionAllowRebounds(this.optAllowRebounds);
+            this.shareListenersWith(solver);
+            this.lastResultSolutions = solver.execute();
+            this.solutionStoredStates = solver.getSolutionStoredStates();
+            this.solutionMemoryMegabytes = solver.getSolutionMemoryMegabytes();
+        } else {
+            final SolverIDDFS master = new SolverIDDFS(this.board);
+            master.setOptionSolutionMode(this.optSolutionMode);
+            master.setOptionAllowRebounds(this.optAllowRebounds);
+            this.shareStopRequestWith(master);  //the listeners get the final solutions only, see iddfs
+            master.prepareSearch(true);
+    
+            final ForkJoinPool pool = new ForkJoinPool(this.optParallelism);
+            try {
+                this.iddfs(master, pool);
+            } finally {
+                pool.shutdownNow();
+            }
+    
+            master.finishSearch();
+            this.solutionStoredStates = master.getSolutionStoredStates();
+            this.solutionMemoryMegabytes = master.getSolutionMemoryMegabytes();
+        }
+        this.sortSolutions();
+        this.fireSearchFinished();
+    
+        this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
+        return this.lastResultSolutions;
+    }
+    
+    
+    
+    private void iddfs(final SolverIDDFS master, final ForkJoinPool pool) throws InterruptedException {
+        final long nanoStart = System.nanoTime();
+        master.setResultSolutions(this.lastResultSolutions);    //solutions that are shorter than the split depth
+        master.setSearchFirstSolutions();
+        final ThreadLocal<SolverIDDFS> workers = new ThreadLocal<SolverIDDFS>() {
+            @Override
+            protected SolverIDDFS initialValue() {
+                return master.createWorker();
+            }
+        };
+        //subtrees are handed to the worker threads after the first two moves (a few dozen subtrees),
+        //or after the first three moves if there are many threads that need more and smaller subtrees.
+        //the subtrees must begin after the first move, so that their solutions can be grouped by it.
+        final int splitDepth = (this.optParallelism > 8 ? 4 : 3);
+        for (int depthLimit = 2;  MAX_DEPTH > depthLimit;  ++depthLimit) {
+            final long nanoDfs = System.nanoTime();
+            this.fireDepthStarted(depthLimit);
+            final List<SolverIDDFS.Subtree> subtrees = master.collectSubtrees(depthLimit, Math.max(2, Math.min(splitDepth, depthLimit - 1)));
+            final FirstSolutions firstSolutions = new FirstSolutions(subtrees);
+            if (false == subtrees.isEmpty()) {
+                final Future<Void> future = pool.submit(new SubtreesTask(workers, depthLimit, subtrees, 0, subtrees.size(), firstSolutions));
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof SubtreeInterruptedException) { throw (InterruptedException)cause.getCause(); }
+                    if (cause instanceof RuntimeException) { throw (RuntimeException)cause; }
+                    if (cause instanceof Error) { throw (Error)cause; }
+                    throw new IllegalStateException(cause);
+                }
+            }
+            firstSolutions.addTo(this.lastResultSolutions);
+            final long nanoEnd = System.nanoTime();
+            Logger.println("iddfs:  finished depthLimit=" + depthLimit +
+                    " subtrees=" + subtrees.size() +
+                    " megaBytes=" + master.getKnownStatesMegaBytesAllocated() +
+                    " time=" + (nanoEnd - nanoDfs) / 1000000L + "ms" +
+                    " totalTime=" + (nanoEnd - nanoStart) / 1000000L + "ms");
+            this.fireDepthFinished(depthLimit, master.getKnownStatesSize(), (nanoEnd - nanoStart) / 1000000L);
+            if ((false == this.lastResultSolutions.isEmpty()) || (true == this.isStopRequested())) {
+                break;  //found solution(s) or search has been stopped
+            }
+        }
+        for (final Solution solution : this.lastResultSolutions) {
+            this.fireSolutionFound(solution);
+        }
+    }
+    
+    
+    
+    //the first solution of each subtree. the subtrees are grouped by their first move, and a subtree is not
+    //needed if another subtree of its group, which comes before it in the order of the moves, has a solution.
+    private static final class FirstSolutions {
+        private final Solution[] solutions;             //[subtree]
+        private final int[] groupBegin;                 //[subtree] = first subtree of the group
+        private final AtomicIntegerArray solvedIndex;   //[groupBegin] = first subtree of the group that has a solution
+    
+        private FirstSolutions(final List<SolverIDDFS.Subtree> subtrees) {
+            this.solutions = new Solution[subtrees.size()];
+            this.groupBegin = new int[subtrees.size()];
+            this.solvedIndex = new AtomicIntegerArray(subtrees.size());
+            for (int i = 0;  i < subtrees.size();  ++i) {
+                //the subtrees are in the order of the moves, so the subtrees of a group are adjacent
+                this.groupBegin[i] = (((i > 0) && subtrees.get(i).hasSameFirstMove(subtrees.get(i - 1))) ? this.groupBegin[i - 1] : i);
+                this.solvedIndex.set(i, Integer.MAX_VALUE);
+            }
+        }
+    
+        private boolean isNeeded(final int index) {
+            return (this.solvedIndex.get(this.groupBegin[index]) > index);
+        }
+    
+        private void setSolution(final int index, final Solution solution) {
+            this.solutions[index] = solution;
+            final int group = this.groupBegin[index];
+            for (int prev = this.solvedIndex.get(group);  prev > index;  prev = this.solvedIndex.get(group)) {
+                if (true == this.solvedIndex.compareAndSet(group, prev, index)) {
+                    break;
+                }
+            }
+        }
+    
+        //the solutions of two groups can be equal, because Solution.finish reorders the moves.
+        private void addTo(final List<Solution> result) {
+            for (int i = 0;  i < this.solutions.length;  ++i) {
+                if ((null != this.solutions[i]) && (this.solvedIndex.get(this.groupBegin[i]) == i)
+                        && (false == result.contains(this.solutions[i]))) {
+                    result.add(this.solutions[i]);
+                }
+            }
+        }
+    }
+    
+    
+    
+    //splits the list of subtrees in halves until a single subtree is left, which is then traversed by a worker.
+    private static final class SubtreesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ThreadLocal<SolverIDDFS> workers;
+        private final int depthLimit;
+        private final List<SolverIDDFS.Subtree> subtrees;
+        private final int begin, end;
+        private final FirstSolutions firstSolutions;
+    
+        private SubtreesTask(final ThreadLocal<SolverIDDFS> workers, final int depthLimit, final List<SolverIDDFS.Subtree> subtrees,
+                final int begin, final int end, final FirstSolutions firstSolutions) {
+            this.workers = workers;
+            this.depthLimit = depthLimit;
+            this.subtrees = subtrees;
+            this.begin = begin;
+            this.end = end;
+            this.firstSolutions = firstSolutions;
+        }
+    
+        @Override
+        protected void compute() {
+            if (this.end - this.begin > 1) {
+                final int middle = (this.begin + this.end) >>> 1;
+                invokeAll(new SubtreesTask(this.workers, this.depthLimit, this.subtrees, this.begin, middle, this.firstSolutions),
+                          new SubtreesTask(this.workers, this.depthLimit, this.subtrees, middle, this.end, this.firstSolutions));
+            } else if (true == this.firstSolutions.isNeeded(this.begin)) {
+                try {
+                    final Solution solution = this.workers.get().searchFirstSolution(this.depthLimit, this.subtrees.get(this.begin));
+                    if (null != solution) {
+                        this.firstSolutions.setSolution(this.begin, solution);
+                    }
+                } catch (InterruptedException e) {
+                    //the subtree has not been searched completely, so the whole iteration fails
+                    throw new SubtreeInterruptedException(e);
+                }
+            }
+        }
+    }
+    
+    
+    
+    //carries the InterruptedException of a worker thread through the ForkJoinPool to the calling thread.
+    private static final class SubtreeInterruptedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private SubtreeInterruptedException(final InterruptedException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,517 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+
+
+/**
+ * This class runs solvers on a pool of worker threads, admitting them against a global memory budget.
+ * <p>
+ * The memory footprint of each job is estimated before it starts (see <code>estimateBytes</code>)
+ * from the board size, the number of robots, the type of goal and the predicted solution length.
+ * A job is started only if its estimate fits into the remaining budget; otherwise it waits in
+ * a queue, and it's rejected if the queue is full. A job whose estimate exceeds the whole budget
+ * is started when no other job is running.
+ * <p>
+ * Small and cheap jobs (the goal robot reaches the goal after a few moves of the other robots)
+ * run on a separate fast lane with its own worker thread,
+ * so they don't have to wait for the expensive jobs that occupy the main workers.
+ * Queued fast lane jobs are started before queued main jobs when memory becomes available.
+ * <p>
+ * After a job has finished, its actual peak memory usage (the size of its
+ * <code>KeyDepthMap</code>, see <code>Solver.getSolutionMemoryMegabytes()</code>) is available.
+ * <p>
+ * The methods of this class are thread-safe.
+ */
+public class SolverScheduler {
+
+    /** jobs with at most this number of estimated stored states run on the fast lane, if their prediction is reliable. */
+    public static final long FAST_LANE_MAX_STATES = 100000;
+
+    //parameters of the estimate of the number of stored states: STATES_AT_DEPTH_8 * branching^(depth - 8)
+    private static final double STATES_AT_DEPTH_8 = 6000;
+    private static final double BRANCHING_PER_ROBOT = 0.3;
+    private static final double WILDCARD_FACTOR = 2.0;
+    private static final int MAX_HELPER_MOVES = 2;
+    private static final int DEPTH_SLACK = 4;           //the relaxed lower bound is usually this much below the solution length
+    private static final int DEPTH_SLACK_DIFFICULT = 7; //the same, if the goal can't be reached after MAX_HELPER_MOVES
+    private static final int MAX_PREDICTED_DEPTH = 30;
+
+    private final long memoryBudget;
+    private final int maxQueued;
+    private final Lane mainLane, fastLane;
+
+    private long reservedBytes = 0, peakReservedBytes = 0, peakJobBytes = 0;
+    private long numStarted = 0, numFastLane = 0, numDelayed = 0, numRejected = 0;
+
+
+
+    /**
+     * @param numWorkers number of worker threads of the main lane
+     * @param maxQueued maximum number of jobs that may wait (in both lanes together)
+     * @param memoryBudget number of bytes that all running jobs together may use (estimated)
+     */
+    public SolverScheduler(final int numWorkers, final int maxQueued, final long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.maxQueued = maxQueued;
+        this.mainLane = new Lane(numWorkers);
+        this.fastLane = new Lane(1);
+        Logger.println("SolverScheduler: workers=" + numWorkers + "  maxQueued=" + maxQueued
+                + "  memoryBudgetMegabytes=" + (memoryBudget >> 20));
+    }
+
+
+
+    /**
+     * Schedules the solver to run <code>Solver.execute()</code>.
+     *
+     * @param solver the solver, with its board and options
+     * @return the job, which gives access to the result of the solver
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Job submit(final Solver solver) {
+        return this.submit(solver, new Callable<List<Solution>>() {
+            @Override
+            public List<Solution> call() throws Exception {
+                return solver.execute();
+            }
+        }, estimate(solver.board));    //the estimate takes a while: don't hold the lock
+    }
+
+    /**
+     * Schedules a task that runs the solver.
+     *
+     * @param solver the solver, with its board and options
+     * @param task the task that runs the solver
+     * @param estimate the memory estimate of the solver, see <code>estimate</code>
+     * @return the job, which gives access to the result of the task
+     * @throws RejectedExecutionException if the queue is full
+     */
+    synchronized Job submit(final Solver solver, final Callable<List<Solution>> task, final Estimate estimate) {
+        final Job job = new Job(task, solver, estimate.predictedDepth, estimate.estimatedBytes,
+                (true == estimate.isFast ? this.fastLane : this.mainLane));
+        if ((true == job.lane.queue.isEmpty()) && (true == this.canStart(job))) {
+            this.start(job);
+        } else if (this.mainLane.queue.size() + this.fastLane.queue.size() >= this.maxQueued) {
+            ++this.numRejected;
+            throw new RejectedExecutionException("too many queued jobs: " + this.maxQueued);
+        } else {
+            ++this.numDelayed;
+            job.lane.queue.add(job);
+        }
+        return job;
+    }
+
+
+
+    /**
+     * Stops the worker threads and interrupts the running jobs. The queued jobs are cancelled.
+     */
+    public synchronized void shutdownNow() {
+        for (final Lane lane : new Lane[] { this.fastLane, this.mainLane }) {
+            for (final Job job : lane.queue) {
+                job.cancel(false);
+            }
+            lane.queue.clear();
+            lane.executor.shutdownNow();
+        }
+    }
+
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * @return sum of the memory estimates of the running jobs
+     */
+    public synchronized long getReservedBytes() {
+        return this.reservedBytes;
+    }
+
+    public synchronized long getPeakReservedBytes() {
+        return this.peakReservedBytes;
+    }
+
+    /**
+     * @return the highest actual memory usage of any finished job
+     */
+    public synchronized long getPeakJobBytes() {
+        return this.peakJobBytes;
+    }
+
+    public synchronized int getNumRunning() {
+        return this.mainLane.numRunning + this.fastLane.numRunning;
+    }
+
+    public synchronized int getNumQueued() {
+        return this.mainLane.queue.size() + this.fastLane.queue.size();
+    }
+
+    public synchronized long getNumStarted() {
+        return this.numStarted;
+    }
+
+    /**
+     * @return number of jobs that have been started on the fast lane
+     */
+    public synchronized long getNumFastLane() {
+        return this.numFastLane;
+    }
+
+    /**
+     * @return number of jobs that had to wait in the queue
+     */
+    public synchronized long getNumDelayed() {
+        return this.numDelayed;
+    }
+
+    public synchronized long getNumRejected() {
+        return this.numRejected;
+    }
+
+
+
+    private boolean canStart(final Job job) {
+        if (job.lane.numRunning >= job.lane.numWorkers) {
+            return false;
+        }
+        return ((this.reservedBytes + job.estimatedBytes <= this.memoryBudget) ||
+                (0 == this.mainLane.numRunning + this.fastLane.numRunning));    //oversized job runs alone
+    }
+
+    private void start(final Job job) {
+        this.reservedBytes += job.estimatedBytes;
+        this.peakReservedBytes = Math.max(this.peakReservedBytes, this.reservedBytes);
+        ++job.lane.numRunning;
+        ++this.numStarted;
+        if (job.lane == this.fastLane) {
+            ++this.numFastLane;
+        }
+        job.lane.executor.execute(job);
+    }
+
+    private synchronized void finished(final Job job) {
+        this.reservedBytes -= job.estimatedBytes;
+        --job.lane.numRunning;
+        this.peakJobBytes = Math.max(this.peakJobBytes, job.getPeakBytes());
+        this.startQueuedJobs();
+    }
+
+    private synchronized void cancelled(final Job job) {
+        if (true == job.lane.queue.remove(job)) {
+            this.startQueuedJobs();     //the cancelled job may have blocked the jobs behind it
+        }
+    }
+
+    //start the queued jobs that fit now. each lane is first-in first-out, the fast lane goes first.
+    private void startQueuedJobs() {
+        for (final Lane lane : new Lane[] { this.fastLane, this.mainLane }) {
+            while ((false == lane.queue.isEmpty()) && (true == this.canStart(lane.queue.peek()))) {
+                this.start(lane.queue.poll());
+            }
+        }
+    }
+
+
+
+    private static class Lane {
+        private final int numWorkers;
+        private final ExecutorService executor;
+        private final ArrayDeque<Job> queue = new ArrayDeque<Job>();
+        private int numRunning = 0;
+
+        private Lane(final int numWorkers) {
+            this.numWorkers = numWorkers;
+            this.executor = Executors.newFixedThreadPool(numWorkers);
+        }
+    }
+
+
+
+    /**
+     * A job of the scheduler. It's the <code>Future</code> of the result of the solver.
+     */
+    public class Job extends FutureTask<List<Solution>> {
+        private final Solver solver;
+        private final int predictedDepth;
+        private final long estimatedBytes;
+        private final Lane lane;
+
+        private Job(final Callable<List<Solution>> task, final Solver solver, final int predictedDepth, final long estimatedBytes, final Lane lane) {
+            super(task);
+            this.solver = solver;
+            this.predictedDepth = predictedDepth;
+            this.estimatedBytes = estimatedBytes;
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                SolverScheduler.this.finished(this);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (true == this.isCancelled()) {
+                SolverScheduler.this.cancelled(this);   //remove it from the queue, if it hasn't been started yet
+            }
+        }
+
+        public Solver getSolver() {
+            return this.solver;
+        }
+
+        public int getPredictedDepth() {
+            return this.predictedDepth;
+        }
+
+        public long getEstimatedBytes() {
+            return this.estimatedBytes;
+        }
+
+        /**
+         * @return <code>true</code> if this job runs on the fast lane
+         */
+        public boolean isFastLane() {
+            return (SolverScheduler.this.fastLane == this.lane);
+        }
+
+        /**
+         * @return the actual peak memory usage of the solver, or 0 if it hasn't finished yet
+         */
+        public long getPeakBytes() {
+            return (long)this.solver.getSolutionMemoryMegabytes() << 20;
+        }
+    }
+
+
+
+    /**
+     * The memory estimate and the lane of a job, computed before the job is submitted.
+     */
+    static final class Estimate {
+        private final int predictedDepth;
+        private final long estimatedBytes;
+        private final boolean isFast;
+
+        private Estimate(final int predictedDepth, final long estimatedBytes, final boolean isFast) {
+            this.predictedDepth = predictedDepth;
+            this.estimatedBytes = estimatedBytes;
+            this.isFast = isFast;
+        }
+    }
+
+    /**
+     * Computes the memory estimate of a job that solves the board.
+     * It searches the moves of the goal robot after some helper moves, so call it
+     * before taking any lock.
+     *
+     * @param board the board, with its robots and goal
+     * @return the estimate, for use by <code>submit</code>
+     */
+    static Estimate estimate(final Board board) {
+        final int movesWithHelpers = movesWithHelpers(board);
+        final int predictedDepth = predictDepth(board, movesWithHelpers);
+        final long estimatedStates = estimateStates(board, predictedDepth);
+        final boolean isFast = (Integer.MAX_VALUE != movesWithHelpers) && (estimatedStates <= FAST_LANE_MAX_STATES);
+        return new Estimate(predictedDepth, estimateBytes(board, estimatedStates), isFast);
+    }
+
+    /**
+     * Estimates the memory that the solver needs to solve the board.
+     * The estimate is the fixed size of the <code>KeyDepthMap</code> plus its size
+     * per state times the estimated number of states at the predicted depth.
+     *
+     * @param board the board, with its robots and goal
+     * @return estimated memory usage in bytes
+     */
+    public static long estimateBytes(final Board board) {
+        return estimateBytes(board, estimateStates(board, predictDepth(board)));
+    }
+
+    private static long estimateBytes(final Board board, final long estimatedStates) {
+        long fixedBytes = 4L << 20;         //root node of KeyDepthMapTrieSpecial
+        if ((8 == board.sizeNumBits) && ((4 == board.getNumRobots()) || (5 == board.getNumRobots()))) {
+            fixedBytes += 64L << 20;        //lookup array of KeyDepthMapTrieSpecial8Bit
+        }
+        final long bytesPerState = (board.getNumRobots() * board.sizeNumBits + 7) / 8 * 3 / 2;   //key plus the overhead of the trie
+        return fixedBytes + (5L << 20) + estimatedStates * bytesPerState;     //one node array and one leaf array at least
+    }
+
+    private static long estimateStates(final Board board, final int predictedDepth) {
+        final double branching = 1.0 + BRANCHING_PER_ROBOT * (board.getNumRobots() - 2);
+        double states = STATES_AT_DEPTH_8 * Math.pow(branching, predictedDepth - 8);
+        if ((null != board.getGoal()) && (board.getGoal().robotNumber < 0)) {
+            states *= WILDCARD_FACTOR;
+        }
+        return (long)Math.min(states, 1e12);
+    }
+
+    /**
+     * Predicts the length of the solution.
+     * <p>
+     * If the goal robot can reach the goal after at most <code>MAX_HELPER_MOVES</code> moves of the
+     * other robots, then the prediction is the number of moves of this solution, but not more than the
+     * relaxed lower bound (the goal robot doesn't have to stop at walls or robots) plus some slack.
+     * Otherwise the puzzle is considered difficult and the prediction is the lower bound plus more slack.
+     *
+     * @param board the board, with its robots and goal
+     * @return predicted number of moves
+     */
+    public static int predictDepth(final Board board) {
+        return predictDepth(board, movesWithHelpers(board));
+    }
+
+    private static int predictDepth(final Board board, final int movesWithHelpers) {
+        final Board.Goal goal = board.getGoal();
+        if (null == goal) {
+            return 0;
+        }
+        final int[] robots = board.getRobotPositions();
+        final boolean[][] walls = board.getWalls();
+        //relaxed lower bound: the robot can stop anywhere along its way.
+        final int[] minMoves = new int[board.size];
+        Arrays.fill(minMoves, MAX_PREDICTED_DEPTH);
+        final int[] queue = new int[board.size];
+        int queueHead = 0, queueTail = 0;
+        minMoves[goal.position] = 0;
+        queue[queueTail++] = goal.position;
+        while (queueHead < queueTail) {
+            final int pos = queue[queueHead++];
+            for (int dir = 0;  dir < 4;  ++dir) {
+                final int dirIncr = board.directionIncrement[dir];
+                for (int newPos = pos;  false == walls[dir][newPos];  ) {
+                    newPos += dirIncr;
+                    if (MAX_PREDICTED_DEPTH == minMoves[newPos]) {
+                        minMoves[newPos] = minMoves[pos] + 1;
+                        queue[queueTail++] = newPos;
+                    }
+                }
+            }
+        }
+        int lowerBound = MAX_PREDICTED_DEPTH;
+        for (int robo = 0;  robo < robots.length;  ++robo) {
+            if ((goal.robotNumber < 0) || (goal.robotNumber == robo)) {
+                lowerBound = Math.min(lowerBound, minMoves[robots[robo]]);
+            }
+        }
+        if (Integer.MAX_VALUE == movesWithHelpers) {
+            return Math.min(MAX_PREDICTED_DEPTH, lowerBound + DEPTH_SLACK_DIFFICULT);
+        }
+        return Math.min(MAX_PREDICTED_DEPTH, Math.max(lowerBound, Math.min(lowerBound + DEPTH_SLACK, movesWithHelpers)));
+    }
+
+    //number of moves to reach the goal, if only the goal robot moves after at most MAX_HELPER_MOVES moves of other robots.
+    //returns Integer.MAX_VALUE if the goal can't be reached this way.
+    private static int movesWithHelpers(final Board board) {
+        if (null == board.getGoal()) {
+            return 0;
+        }
+        int result = Integer.MAX_VALUE;
+        for (int robo = 0;  robo < board.getNumRobots();  ++robo) {
+            if ((board.getGoal().robotNumber < 0) || (board.getGoal().robotNumber == robo)) {
+                result = Math.min(result, movesWithHelpers(board, board.getRobotPositions(), robo, MAX_HELPER_MOVES));
+            }
+        }
+        return result;
+    }
+
+    private static int movesWithHelpers(final Board board, final int[] robots, final int robo, final int helperMoves) {
+        int result = soloMoves(board, robots, robo);
+        if (helperMoves > 0) {
+            for (int helper = 0;  helper < robots.length;  ++helper) {
+                for (int dir = 0;  (helper != robo) && (dir < 4);  ++dir) {
+                    final int newPos = slide(board, robots, helper, dir);
+                    if (newPos != robots[helper]) {
+                        final int[] newRobots = robots.clone();
+                        newRobots[helper] = newPos;
+                        final int moves = movesWithHelpers(board, newRobots, robo, helperMoves - 1);
+                        if (Integer.MAX_VALUE != moves) {
+                            result = Math.min(result, moves + 1);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    //number of moves the robot needs to reach the goal if the other robots don't move.
+    private static int soloMoves(final Board board, final int[] robots, final int robo) {
+        final int goalPosition = board.getGoal().position;
+        final int[] state = robots.clone();
+        final int[] moves = new int[board.size];
+        Arrays.fill(moves, -1);
+        final int[] queue = new int[board.size];
+        int queueHead = 0, queueTail = 0;
+        moves[robots[robo]] = 0;
+        queue[queueTail++] = robots[robo];
+        while (queueHead < queueTail) {
+            final int pos = queue[queueHead++];
+            if (goalPosition == pos) {
+                return moves[pos];
+            }
+            state[robo] = pos;
+            for (int dir = 0;  dir < 4;  ++dir) {
+                final int newPos = slide(board, state, robo, dir);
+                if (-1 == moves[newPos]) {
+                    moves[newPos] = moves[pos] + 1;
+                    queue[queueTail++] = newPos;
+                }
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    //move the robot until it reaches a wall or another robot.
+    private static int slide(final Board board, final int[] robots, final int robo, final int dir) {
+        final boolean[] walls = board.getWalls()[dir];
+        final int dirIncr = board.directionIncrement[dir];
+        int newPos = robots[robo];
+        while (false == walls[newPos]) {
+            newPos += dirIncr;
+            if (true == isRobotPos(robots, robo, newPos)) {
+                newPos -= dirIncr;
+                break;
+            }
+        }
+        return newPos;
+    }
+
+    private static boolean isRobotPos(final int[] robots, final int robo, final int position) {
+        for (int i = 0;  i < robots.length;  ++i) {
+            if ((i != robo) && (position == robots[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
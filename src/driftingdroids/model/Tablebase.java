@@ -0,0 +1,439 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+
+
+/**
+ * This class is a retrograde tablebase for one board and one goal:
+ * it contains the optimal number of moves for every placement of the robots.
+ * <p>
+ * A state consists of the goal robot's position and the (sorted) positions of the
+ * helper robots, like the keys made by <code>KeyMakerInt43</code>. The states are
+ * ranked by the combinatorial number system, so the table has no hash or trie overhead
+ * and each lookup is O(1). The depths are computed by a backward breadth-first search
+ * that starts at all states with the goal robot on the goal position and uses
+ * reverse moves: a robot that has stopped at a wall or in front of another robot
+ * could have come from any position of its free path in the opposite direction.
+ * <p>
+ * The depths are packed into 4 bits per state and stored in a memory-mapped file.
+ * Each nibble contains the difference between the depth and a simple lower bound
+ * (the number of moves of the goal robot if it could stop anywhere, like
+ * <code>SolverIDDFS.minimumMovesToGoal</code>), so that the large depths fit into 4 bits.
+ * The few states with a difference of 14 moves or more are stored in a sorted
+ * list at the end of the file and found by binary search.
+ * <p>
+ * The depths are the pure number of moves with rebounds allowed. The special rule
+ * of the solvers for goals that can be reached in one move (<code>Board.isSolution01()</code>)
+ * is not considered. Wildcard goals are not supported.
+ */
+public final class Tablebase {
+
+    private static final int FILE_MAGIC = 0x44445442;   // "DDTB"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 4 * 8;
+    private static final int DELTA_DEEP = 14;           //depth - lowerBound >= DELTA_DEEP is stored in the list of deep states
+    private static final int NIBBLE_DEEP = DELTA_DEEP + 1;
+
+    private final Board board;
+    private final int goalRobot, numHelpers;
+    private final int[] cellOfPosition, positionOfCell;
+    private final int[] lowerBound;             //index = position of goal robot
+    private final long[][] binomial;            //binomial[n][k] = n choose k
+    private final long numHelperCombinations;   //numCells choose numHelpers
+    private final long numIndexes;              //numCells * numHelperCombinations
+
+    private ByteBuffer table;                   //two states per byte, low nibble first
+    private LongBuffer deepStates;              //sorted: (index << 8) | depth
+    private int maxDepth;
+
+
+
+    private Tablebase(final Board board) {
+        if ((null == board.getGoal()) || (board.getGoal().robotNumber < 0)) {
+            throw new IllegalArgumentException("Tablebase requires a goal for a specific robot");
+        }
+        this.board = board;
+        this.goalRobot = board.getGoal().robotNumber;
+        this.numHelpers = board.getNumRobots() - 1;
+        this.cellOfPosition = new int[board.size];
+        int numCells = 0;
+        for (int pos = 0;  pos < board.size;  ++pos) {
+            this.cellOfPosition[pos] = (board.isObstacle(pos) ? -1 : numCells++);
+        }
+        this.positionOfCell = new int[numCells];
+        for (int pos = 0;  pos < board.size;  ++pos) {
+            if (this.cellOfPosition[pos] >= 0) { this.positionOfCell[this.cellOfPosition[pos]] = pos; }
+        }
+        this.lowerBound = this.precomputeLowerBound();
+        this.binomial = new long[numCells + 1][this.numHelpers + 2];
+        for (int n = 0;  n <= numCells;  ++n) {
+            this.binomial[n][0] = 1;
+            for (int k = 1;  k < this.binomial[n].length;  ++k) {
+                this.binomial[n][k] = (0 == n ? 0 : this.binomial[n - 1][k - 1] + this.binomial[n - 1][k]);
+            }
+        }
+        this.numHelperCombinations = this.binomial[numCells][this.numHelpers];
+        this.numIndexes = numCells * this.numHelperCombinations;
+        if (FILE_HEADER_BYTES + (this.numIndexes + 1) / 2 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tablebase is too large: " + this.numIndexes + " states");
+        }
+    }
+
+
+
+    /**
+     * Computes the tablebase for the given board and its current goal and stores it in a file.
+     *
+     * @param board the board (robot positions don't matter)
+     * @param file the file that is created or overwritten
+     * @return the tablebase, memory-mapped from the file
+     * @throws IOException if the file can't be written
+     */
+    public static Tablebase create(final Board board, final File file) throws IOException {
+        final Tablebase tb = new Tablebase(board);
+        final long tableBytes = (tb.numIndexes + 1) / 2;
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);   //invalidate an old file
+            raf.setLength(FILE_HEADER_BYTES + tableBytes);
+            final FileChannel channel = raf.getChannel();
+            final MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, FILE_HEADER_BYTES, tableBytes);
+            final long[] deep = tb.generate(table);
+            table.force();
+            final ByteBuffer deepBuffer = ByteBuffer.allocate(deep.length * 8);
+            deepBuffer.asLongBuffer().put(deep);
+            channel.write(deepBuffer, FILE_HEADER_BYTES + tableBytes);
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(board.size).putInt(board.getGoal().position);
+            header.putInt(wallsChecksum(board)).putInt(board.getNumRobots()).putInt(deep.length).putInt(tb.maxDepth);
+            header.flip();
+            channel.write(header, 0);
+        } finally {
+            raf.close();
+        }
+        return open(board, file);
+    }
+
+
+
+    /**
+     * Opens the tablebase file of the given board and its current goal.
+     *
+     * @param board the board (robot positions don't matter)
+     * @param file the file that has been created by <code>create</code>
+     * @return the tablebase, memory-mapped from the file
+     * @throws IOException if the file can't be read or doesn't match the board
+     */
+    public static Tablebase open(final Board board, final File file) throws IOException {
+        final Tablebase tb = new Tablebase(board);
+        final long tableBytes = (tb.numIndexes + 1) / 2;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_BYTES);
+            final int numDeep = header.getInt(24);
+            if ((FILE_MAGIC != header.getInt(0)) || (FILE_VERSION != header.getInt(4)) || (board.size != header.getInt(8))
+                    || (board.getGoal().position != header.getInt(12)) || (wallsChecksum(board) != header.getInt(16))
+                    || (board.getNumRobots() != header.getInt(20)) || (FILE_HEADER_BYTES + tableBytes + numDeep * 8L != raf.length())) {
+                throw new IOException("invalid header in file " + file);
+            }
+            tb.maxDepth = header.getInt(28);
+            tb.table = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_BYTES, tableBytes);
+            tb.deepStates = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_BYTES + tableBytes, numDeep * 8L).asLongBuffer();
+        } finally {
+            raf.close();    //the mappings stay valid
+        }
+        return tb;
+    }
+
+
+
+    /**
+     * Gets the optimal number of moves to goal.
+     *
+     * @param robotPositions the positions of all robots (like <code>Board.getRobotPositions()</code>)
+     * @return the optimal number of moves, or -1 if the goal can't be reached
+     */
+    public int getOptimalMoves(final int[] robotPositions) {
+        final int[] cells = new int[this.numHelpers];
+        for (int i = 0, robo = 0;  robo < robotPositions.length;  ++robo) {
+            if (this.goalRobot != robo) { cells[i++] = this.cellOfPosition[robotPositions[robo]]; }
+        }
+        Arrays.sort(cells);
+        return this.getOptimalMoves(this.cellOfPosition[robotPositions[this.goalRobot]] * this.numHelperCombinations + this.rank(cells));
+    }
+
+
+
+    /**
+     * Gets the optimal number of moves to goal.
+     * This method and <code>getNumIndexes()</code> can be used for a sequential scan of all states.
+     *
+     * @param index the index of the state (0 ... getNumIndexes()-1)
+     * @return the optimal number of moves, or -1 if the goal can't be reached or the index is not a valid state
+     */
+    public int getOptimalMoves(final long index) {
+        final int nibble = this.getNibble(this.table, index);
+        if (0 == nibble) {
+            return -1;
+        }
+        if (NIBBLE_DEEP == nibble) {
+            int low = 0, high = this.deepStates.limit() - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final long value = this.deepStates.get(mid);
+                final long midIndex = value >>> 8;
+                if (midIndex < index) { low = mid + 1; }
+                else if (midIndex > index) { high = mid - 1; }
+                else { return (int)(value & 0xff); }
+            }
+            throw new IllegalStateException("deep state not found: index=" + index);
+        }
+        return nibble - 1 + this.lowerBound[this.positionOfCell[(int)(index / this.numHelperCombinations)]];
+    }
+
+
+
+    /**
+     * Gets the robot positions of the state. The helper robots are in ascending order of their positions.
+     *
+     * @param index the index of the state (0 ... getNumIndexes()-1)
+     * @return the positions of all robots (like <code>Board.getRobotPositions()</code>), or null if the index is not a valid state
+     */
+    public int[] getRobotPositions(final long index) {
+        final int goalCell = (int)(index / this.numHelperCombinations);
+        final int[] cells = new int[this.numHelpers];
+        this.unrank(index % this.numHelperCombinations, cells);
+        final int[] result = new int[this.numHelpers + 1];
+        for (int i = 0, robo = 0;  robo < result.length;  ++robo) {
+            if (this.goalRobot == robo) {
+                result[robo] = this.positionOfCell[goalCell];
+            } else {
+                if (goalCell == cells[i]) { return null; }
+                result[robo] = this.positionOfCell[cells[i++]];
+            }
+        }
+        return result;
+    }
+
+
+
+    public long getNumIndexes() {
+        return this.numIndexes;
+    }
+
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+
+
+    private static int wallsChecksum(final Board board) {
+        final CRC32 crc = new CRC32();
+        for (final boolean[] walls : board.getWalls()) {
+            for (final boolean wall : walls) {
+                crc.update(wall ? 1 : 0);
+            }
+        }
+        return (int)crc.getValue();
+    }
+
+
+
+    private int getNibble(final ByteBuffer buffer, final long index) {
+        final int b = buffer.get((int)(index >>> 1));
+        return (0 == (index & 1) ? b & 0x0f : (b >>> 4) & 0x0f);
+    }
+
+    private void setNibble(final ByteBuffer buffer, final long index, final int nibble) {
+        final int bidx = (int)(index >>> 1);
+        final int b = buffer.get(bidx);
+        buffer.put(bidx, (byte)(0 == (index & 1) ? (b & 0xf0) | nibble : (b & 0x0f) | (nibble << 4)));
+    }
+
+
+
+    //combinatorial number system: cells must be sorted in ascending order.
+    private long rank(final int[] cells) {
+        long result = 0;
+        for (int i = 0;  i < cells.length;  ++i) {
+            result += this.binomial[cells[i]][i + 1];
+        }
+        return result;
+    }
+
+    private void unrank(long rank, final int[] cells) {
+        int high = this.positionOfCell.length - 1;
+        for (int i = cells.length - 1;  i >= 0;  --i) {
+            //find the largest cell c with binomial[c][i+1] <= rank
+            int low = i;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (this.binomial[mid][i + 1] <= rank) { low = mid; }
+                else { high = mid - 1; }
+            }
+            cells[i] = low;
+            rank -= this.binomial[low][i + 1];
+            high = low - 1;
+        }
+    }
+
+
+
+    //the number of moves of the goal robot if it could stop at any position and ignores the other robots.
+    //this is the same as SolverIDDFS.precomputeMinimumMovesToGoal()
+    private int[] precomputeLowerBound() {
+        final int[] result = new int[this.board.size];
+        final boolean[][] walls = this.board.getWalls();
+        final boolean[] posToDo = new boolean[result.length];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        result[this.board.getGoal().position] = 0;
+        posToDo[this.board.getGoal().position] = true;
+        for (boolean done = false;  false == done;  ) {
+            done = true;
+            for (int pos = 0;  pos < posToDo.length;  ++pos) {
+                if (true == posToDo[pos]) {
+                    posToDo[pos] = false;
+                    final int depth = result[pos] + 1;
+                    for (int dir = 0;  dir < 4;  ++dir) {
+                        for (int newPos = pos;  false == walls[dir][newPos];  ) {
+                            newPos += this.board.directionIncrement[dir];
+                            if (depth < result[newPos]) {
+                                result[newPos] = depth;
+                                posToDo[newPos] = true;
+                                done = false;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+
+
+    private long[] generate(final ByteBuffer table) {
+        final long nanoStart = System.nanoTime();
+        final int numWords = (int)((this.numIndexes + 63) >>> 6);
+        long[] thisLevel = new long[numWords];
+        long[] nextLevel = new long[numWords];
+        long[] deep = new long[1024];
+        int numDeep = 0;
+        final boolean[][] walls = this.board.getWalls();
+        final int[] dirIncr = this.board.directionIncrement;
+        final boolean[] isRobot = new boolean[this.board.size];
+        final int[] cells = new int[this.numHelpers];
+        final int[] newCells = new int[this.numHelpers];
+        final int[] positions = new int[this.numHelpers + 1];   //goal robot is positions[0]
+
+        //depth 0: the goal robot is on the goal position
+        final int goalCell = this.cellOfPosition[this.board.getGoal().position];
+        long numLevel = 0;
+        for (long r = 0;  r < this.numHelperCombinations;  ++r) {
+            this.unrank(r, cells);
+            if (Arrays.binarySearch(cells, goalCell) < 0) {
+                final long index = goalCell * this.numHelperCombinations + r;
+                this.setNibble(table, index, 1);
+                thisLevel[(int)(index >>> 6)] |= (1L << index);
+                ++numLevel;
+            }
+        }
+        Logger.println("Tablebase: depth=0 states=" + numLevel);
+
+        for (int depth = 1;  numLevel > 0;  ++depth) {
+            numLevel = 0;
+            for (int word = 0;  word < numWords;  ++word) {
+                for (long bits = thisLevel[word];  0 != bits;  bits &= bits - 1) {
+                    final long index = ((long)word << 6) + Long.numberOfTrailingZeros(bits);
+                    final long helperRank = index % this.numHelperCombinations;
+                    this.unrank(helperRank, cells);
+                    positions[0] = this.positionOfCell[(int)(index / this.numHelperCombinations)];
+                    for (int i = 0;  i < this.numHelpers;  ++i) { positions[i + 1] = this.positionOfCell[cells[i]]; }
+                    for (final int pos : positions) { isRobot[pos] = true; }
+                    //reverse moves of all robots
+                    for (int robo = 0;  robo < positions.length;  ++robo) {
+                        final int stopPos = positions[robo];
+                        for (int dir = 0;  dir < 4;  ++dir) {
+                            //the robot can only have stopped here if there is a wall or another robot in direction dir
+                            if ((false == walls[dir][stopPos]) && (false == isRobot[stopPos + dirIncr[dir]])) {
+                                continue;
+                            }
+                            final int backDir = (dir + 2) & 3;
+                            for (int fromPos = stopPos;  (false == walls[backDir][fromPos]) && (false == isRobot[fromPos + dirIncr[backDir]]);  ) {
+                                fromPos += dirIncr[backDir];
+                                final int fromCell = this.cellOfPosition[fromPos];
+                                final long newIndex;
+                                if (0 == robo) {
+                                    newIndex = fromCell * this.numHelperCombinations + helperRank;
+                                } else {
+                                    //replace the helper and keep the cells sorted
+                                    int j = 0;
+                                    for (int i = 0;  i < this.numHelpers;  ++i) {
+                                        if (i != robo - 1) { newCells[j++] = cells[i]; }
+                                    }
+                                    int k = this.numHelpers - 1;
+                                    while ((k > 0) && (newCells[k - 1] > fromCell)) {
+                                        newCells[k] = newCells[k - 1];
+                                        --k;
+                                    }
+                                    newCells[k] = fromCell;
+                                    newIndex = this.cellOfPosition[positions[0]] * this.numHelperCombinations + this.rank(newCells);
+                                }
+                                if (0 == this.getNibble(table, newIndex)) {
+                                    final int delta = depth - this.lowerBound[0 == robo ? fromPos : positions[0]];
+                                    this.setNibble(table, newIndex, Math.min(delta, DELTA_DEEP) + 1);
+                                    nextLevel[(int)(newIndex >>> 6)] |= (1L << newIndex);
+                                    ++numLevel;
+                                    if (delta >= DELTA_DEEP) {
+                                        if (deep.length == numDeep) { deep = Arrays.copyOf(deep, numDeep * 2); }
+                                        deep[numDeep++] = (newIndex << 8) | depth;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    for (final int pos : positions) { isRobot[pos] = false; }
+                }
+            }
+            if (numLevel > 0) {
+                this.maxDepth = depth;
+                Logger.println("Tablebase: depth=" + depth + " states=" + numLevel + " deepStates=" + numDeep + " time=" + (System.nanoTime() - nanoStart) / 1000000L + "ms");
+            }
+            final long[] tmp = thisLevel;
+            thisLevel = nextLevel;
+            nextLevel = tmp;
+            Arrays.fill(nextLevel, 0);
+        }
+        deep = Arrays.copyOf(deep, numDeep);
+        Arrays.sort(deep);
+        return deep;
+    }
+
+}
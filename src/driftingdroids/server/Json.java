@@ -0,0 +1,169 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+
+/**
+ * This class is a minimal JSON reader and writer for the requests and responses
+ * of the solver server. It reads a flat object whose values are strings, numbers,
+ * booleans or null (no nested objects or arrays).
+ */
+final class Json {
+
+    private final String text;
+    private int index = 0;
+
+
+
+    private Json(final String text) {
+        this.text = text;
+    }
+
+
+
+    /**
+     * Parses a flat JSON object.
+     *
+     * @param text the JSON text
+     * @return map of the names and values (String, Double, Boolean or null)
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    static Map<String, Object> parseObject(final String text) {
+        final Json json = new Json(text);
+        final Map<String, Object> result = new LinkedHashMap<String, Object>();
+        json.expect('{');
+        if ('}' != json.peek()) {
+            do {
+                final String name = json.readString();
+                json.expect(':');
+                result.put(name, json.readValue());
+            } while (true == json.accept(','));
+        }
+        json.expect('}');
+        while ((json.index < json.text.length()) && (Character.isWhitespace(json.text.charAt(json.index)))) {
+            ++json.index;
+        }
+        if (json.index < json.text.length()) {
+            throw new IllegalArgumentException("unexpected text after the JSON object at index " + json.index);
+        }
+        return result;
+    }
+
+    /**
+     * @param str a string
+     * @return the string as JSON string literal (quoted and escaped)
+     */
+    static String quote(final String str) {
+        final StringBuilder sb = new StringBuilder(str.length() + 2);
+        sb.append('"');
+        for (int i = 0;  i < str.length();  ++i) {
+            final char c = str.charAt(i);
+            if (('"' == c) || ('\\' == c)) {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+
+
+    private char peek() {
+        while ((this.index < this.text.length()) && (Character.isWhitespace(this.text.charAt(this.index)))) {
+            ++this.index;
+        }
+        if (this.index >= this.text.length()) {
+            throw new IllegalArgumentException("unexpected end of JSON text");
+        }
+        return this.text.charAt(this.index);
+    }
+
+    private boolean accept(final char c) {
+        if ((this.index < this.text.length()) && (c == this.peek())) {
+            ++this.index;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char c) {
+        if (false == this.accept(c)) {
+            throw new IllegalArgumentException("expected '" + c + "' at index " + this.index);
+        }
+    }
+
+    private Object readValue() {
+        final char c = this.peek();
+        if ('"' == c) {
+            return this.readString();
+        } else if (this.text.startsWith("true", this.index)) {
+            this.index += 4;
+            return Boolean.TRUE;
+        } else if (this.text.startsWith("false", this.index)) {
+            this.index += 5;
+            return Boolean.FALSE;
+        } else if (this.text.startsWith("null", this.index)) {
+            this.index += 4;
+            return null;
+        } else {
+            final int begin = this.index;
+            while ((this.index < this.text.length()) && ("+-0123456789.eE".indexOf(this.text.charAt(this.index)) >= 0)) {
+                ++this.index;
+            }
+            try {
+                return Double.valueOf(this.text.substring(begin, this.index));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid JSON value at index " + begin);
+            }
+        }
+    }
+
+    private String readString() {
+        this.expect('"');
+        final StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (this.index >= this.text.length()) {
+                throw new IllegalArgumentException("unterminated JSON string");
+            }
+            final char c = this.text.charAt(this.index++);
+            if ('"' == c) {
+                return sb.toString();
+            } else if ('\\' == c) {
+                final char e = this.text.charAt(this.index++);
+                switch (e) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u': sb.append((char)Integer.parseInt(this.text.substring(this.index, this.index + 4), 16));  this.index += 4; break;
+                default:  sb.append(e); break;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
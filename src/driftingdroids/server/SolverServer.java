@@ -0,0 +1,338 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2025 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import driftingdroids.model.Board;
+import driftingdroids.model.Logger;
+import driftingdroids.model.Solution;
+import driftingdroids.model.Solver;
+import driftingdroids.model.SolverAnytime;
+import driftingdroids.model.SolverBFS;
+import driftingdroids.model.SolverCoalescer;
+import driftingdroids.model.SolverIDDFS;
+import driftingdroids.model.SolverScheduler;
+
+
+
+/**
+ * This is a headless HTTP server that solves board configurations.
+ * <p>
+ * <b>POST /solve</b> expects a JSON object with the board configuration, either as
+ * <code>"gameID"</code> or as <code>"gameDump"</code>, and these optional members:
+ * <code>"solutionMode"</code> ("minimum" or "maximum"), <code>"allowRebounds"</code> (boolean),
+ * <code>"solver"</code> (simple class name of a Solver, see <code>SOLVER_CLASSES</code>), <code>"timeoutMillis"</code> and
+ * <code>"maxSolutions"</code>. It returns the move lists of the solutions and the statistics
+ * of the solver.
+ * <p>
+ * <b>GET /health</b> returns the status and the counters of the server.
+ * <p>
+ * The solvers run on a <code>SolverScheduler</code>, which admits them against a memory budget
+ * and runs small puzzles on a fast lane. Requests are rejected with status 503 when its queue is full. A solver that exceeds its timeout is stopped
+ * (<code>Solver.stopSearch()</code>) and interrupted, and the request gets status 504.
+ * <p>
+ * Identical requests that arrive while the first one is being solved share its search
+ * (see <code>SolverCoalescer</code>). The shared search is stopped only when all of
+ * these requests have timed out.
+ */
+public class SolverServer {
+
+    //the solvers that a request may choose: single-threaded and in-memory only,
+    //so that the scheduler's memory budget and number of workers are respected
+    private static final Class<?>[] SOLVER_CLASSES = {
+        SolverIDDFS.class, SolverBFS.class, SolverAnytime.class
+    };
+
+    private final HttpServer httpServer;
+    private final SolverScheduler scheduler;
+    private final ExecutorService exchangePool;
+    private final SolverCoalescer coalescer;
+    private final long maxTimeoutMillis;
+    private final long startMillis = System.currentTimeMillis();
+
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numSolved = new AtomicLong();
+    private final AtomicLong numTimeouts = new AtomicLong();
+    private final AtomicLong numRejected = new AtomicLong();
+    private final AtomicLong numErrors = new AtomicLong();
+    private final AtomicLong sumSolverMillis = new AtomicLong();
+
+
+
+    /**
+     * Creates and starts the server.
+     *
+     * @param port the TCP port
+     * @param numWorkers number of worker threads that run the solvers
+     * @param queueCapacity number of requests that may wait for a worker thread
+     * @param maxTimeoutMillis the timeout of a request (the maximum that a request may specify)
+     * @param memoryBudget number of bytes that the running solvers may use together (estimated)
+     * @throws IOException
+     */
+    public SolverServer(final int port, final int numWorkers, final int queueCapacity, final long maxTimeoutMillis, final long memoryBudget) throws IOException {
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.scheduler = new SolverScheduler(numWorkers, queueCapacity, memoryBudget);
+        this.coalescer = new SolverCoalescer(this.scheduler);
+        this.exchangePool = Executors.newCachedThreadPool();
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.httpServer.createContext("/solve", new SolveHandler());
+        this.httpServer.createContext("/health", new HealthHandler());
+        this.httpServer.setExecutor(this.exchangePool);
+        this.httpServer.start();
+        Logger.println("SolverServer: listening on port " + this.httpServer.getAddress().getPort() + "  workers=" + numWorkers
+                + "  queueCapacity=" + queueCapacity + "  timeoutMillis=" + maxTimeoutMillis);
+    }
+
+
+
+    /**
+     * Starts the server. The arguments are optional: port, number of workers, queue capacity, timeout (milliseconds),
+     * memory budget (megabytes).
+     */
+    public static void main(final String[] args) throws IOException {
+        final int port = (args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        final int numWorkers = (args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+        final int queueCapacity = (args.length > 2 ? Integer.parseInt(args[2]) : 100);
+        final long timeoutMillis = (args.length > 3 ? Long.parseLong(args[3]) : 60000L);
+        final long memoryBudget = (args.length > 4 ? Long.parseLong(args[4]) << 20 : Runtime.getRuntime().maxMemory() / 4 * 3);
+        new SolverServer(port, numWorkers, queueCapacity, timeoutMillis, memoryBudget);
+    }
+
+
+
+    public int getPort() {
+        return this.httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server and interrupts the running solvers.
+     */
+    public void stop() {
+        this.httpServer.stop(0);
+        this.scheduler.shutdownNow();
+        this.exchangePool.shutdownNow();
+    }
+
+
+
+    private class SolveHandler implements HttpHandler {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            SolverServer.this.numRequests.incrementAndGet();
+            try {
+                if (false == "POST".equals(exchange.getRequestMethod())) {
+                    sendResponse(exchange, 405, errorJson("use POST"));
+                    return;
+                }
+                final Map<String, Object> request;
+                final Solver solver;
+                try {
+                    request = Json.parseObject(readBody(exchange.getRequestBody()));
+                    solver = createSolver(request);
+                } catch (RuntimeException e) {   //IllegalArgumentException, or any other exception of a malformed request
+                    SolverServer.this.numErrors.incrementAndGet();
+                    sendResponse(exchange, 400, errorJson((e instanceof IllegalArgumentException) ? e.getMessage() : "invalid request: " + e));
+                    return;
+                }
+                final long timeoutMillis = Math.min(SolverServer.this.maxTimeoutMillis,
+                        getLong(request, "timeoutMillis", SolverServer.this.maxTimeoutMillis));
+                final int maxSolutions = (int)getLong(request, "maxSolutions", 10);
+                final SolverCoalescer.Ticket ticket;
+                try {
+                    ticket = SolverServer.this.coalescer.submit(solver);
+                } catch (RejectedExecutionException e) {
+                    SolverServer.this.numRejected.incrementAndGet();
+                    sendResponse(exchange, 503, errorJson("too many requests"));
+                    return;
+                }
+                try {
+                    final List<Solution> solutions = ticket.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                    SolverServer.this.numSolved.incrementAndGet();
+                    if (false == ticket.isCoalesced()) {
+                        SolverServer.this.sumSolverMillis.addAndGet(ticket.getSolver().getSolutionMilliSeconds());
+                    }
+                    sendResponse(exchange, 200, solutionsJson(ticket.getJob(), solutions, maxSolutions));
+                } catch (TimeoutException e) {
+                    ticket.cancel();    //stops the search if no other request waits for it
+                    SolverServer.this.numTimeouts.incrementAndGet();
+                    sendResponse(exchange, 504, errorJson("timeout after " + timeoutMillis + "ms"));
+                } catch (ExecutionException e) {
+                    SolverServer.this.numErrors.incrementAndGet();
+                    sendResponse(exchange, 500, errorJson(String.valueOf(e.getCause())));
+                } catch (InterruptedException e) {
+                    ticket.cancel();
+                    sendResponse(exchange, 503, errorJson("server is shutting down"));
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+
+
+    private class HealthHandler implements HttpHandler {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                final SolverServer s = SolverServer.this;
+                final Runtime rt = Runtime.getRuntime();
+                final String json = "{\"status\":\"ok\""
+                        + ",\"uptimeMillis\":" + (System.currentTimeMillis() - s.startMillis)
+                        + ",\"runningJobs\":" + s.scheduler.getNumRunning()
+                        + ",\"queuedJobs\":" + s.scheduler.getNumQueued()
+                        + ",\"delayedJobs\":" + s.scheduler.getNumDelayed()
+                        + ",\"fastLaneJobs\":" + s.scheduler.getNumFastLane()
+                        + ",\"reservedMegabytes\":" + (s.scheduler.getReservedBytes() >> 20)
+                        + ",\"peakReservedMegabytes\":" + (s.scheduler.getPeakReservedBytes() >> 20)
+                        + ",\"peakJobMegabytes\":" + (s.scheduler.getPeakJobBytes() >> 20)
+                        + ",\"memoryBudgetMegabytes\":" + (s.scheduler.getMemoryBudget() >> 20)
+                        + ",\"requests\":" + s.numRequests.get()
+                        + ",\"solved\":" + s.numSolved.get()
+                        + ",\"timeouts\":" + s.numTimeouts.get()
+                        + ",\"rejected\":" + s.numRejected.get()
+                        + ",\"errors\":" + s.numErrors.get()
+                        + ",\"runningSearches\":" + s.coalescer.getNumRunningSearches()
+                        + ",\"coalesced\":" + s.coalescer.getNumCoalesced()
+                        + ",\"solverMilliSeconds\":" + s.sumSolverMillis.get()
+                        + ",\"usedMemoryMegabytes\":" + ((rt.totalMemory() - rt.freeMemory()) >> 20)
+                        + ",\"maxMemoryMegabytes\":" + (rt.maxMemory() >> 20)
+                        + "}";
+                sendResponse(exchange, 200, json);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+
+
+    static Solver createSolver(final Map<String, Object> request) {
+        final Board board;
+        if (request.get("gameID") instanceof String) {
+            board = Board.createBoardGameID((String)request.get("gameID"));
+        } else if (request.get("gameDump") instanceof String) {
+            board = Board.createBoardGameDump((String)request.get("gameDump"));
+        } else {
+            throw new IllegalArgumentException("missing \"gameID\" or \"gameDump\"");
+        }
+        if ((null == board) || (null == board.getGoal())) {
+            throw new IllegalArgumentException("invalid board configuration");
+        }
+        final Solver solver;
+        if (request.get("solver") instanceof String) {
+            solver = Solver.createInstance(board, getSolverClass((String)request.get("solver")));
+        } else {
+            solver = Solver.createInstance(board);
+        }
+        final Object solutionMode = request.get("solutionMode");
+        if (null != solutionMode) {
+            boolean found = false;
+            for (Solver.SOLUTION_MODE mode : Solver.SOLUTION_MODE.values()) {
+                if (mode.getName().equals(solutionMode)) {
+                    solver.setOptionSolutionMode(mode);
+                    found = true;
+                }
+            }
+            if (false == found) {
+                throw new IllegalArgumentException("unknown solutionMode: " + solutionMode);
+            }
+        }
+        if (request.get("allowRebounds") instanceof Boolean) {
+            solver.setOptionAllowRebounds(((Boolean)request.get("allowRebounds")).booleanValue());
+        }
+        return solver;
+    }
+
+    private static Class<? extends Solver> getSolverClass(final String simpleName) {
+        for (Class<?> clazz : SOLVER_CLASSES) {
+            if (clazz.getSimpleName().equals(simpleName)) {
+                return clazz.asSubclass(Solver.class);
+            }
+        }
+        throw new IllegalArgumentException("unknown solver: " + simpleName);
+    }
+
+    private static long getLong(final Map<String, Object> request, final String name, final long defaultValue) {
+        final Object value = request.get(name);
+        return ((value instanceof Double) ? ((Double)value).longValue() : defaultValue);
+    }
+
+
+
+    static String solutionsJson(final SolverScheduler.Job job, final List<Solution> solutions, final int maxSolutions) {
+        final Solver solver = job.getSolver();
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"moves\":").append(solutions.get(0).size());
+        sb.append(",\"numSolutions\":").append(solutions.size());
+        sb.append(",\"solutions\":[");
+        for (int i = 0;  i < Math.min(maxSolutions, solutions.size());  ++i) {
+            if (0 < i) { sb.append(','); }
+            sb.append(Json.quote(solutions.get(i).toMovelistString()));
+        }
+        sb.append("],\"solutionMilliSeconds\":").append(solver.getSolutionMilliSeconds());
+        sb.append(",\"solutionStoredStates\":").append(solver.getSolutionStoredStates());
+        sb.append(",\"solutionMemoryMegabytes\":").append(solver.getSolutionMemoryMegabytes());
+        sb.append(",\"estimatedMemoryMegabytes\":").append(job.getEstimatedBytes() >> 20);
+        sb.append(",\"fastLane\":").append(job.isFastLane());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static String errorJson(final String message) {
+        return "{\"error\":" + Json.quote(String.valueOf(message)) + "}";
+    }
+
+    private static String readBody(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        for (int len;  (len = in.read(buffer)) > 0;  ) {
+            out.write(buffer, 0, len);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendResponse(final HttpExchange exchange, final int status, final String json) throws IOException {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
@@ -17,34 +17,50 @@
 
 package driftingdroids.ui;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import driftingdroids.model.Board;
 import driftingdroids.model.KeyDepthMap;
+import driftingdroids.model.KeyDepthMapChunkPool;
 import driftingdroids.model.KeyDepthMapFactory;
+import driftingdroids.model.KeyDepthMapHash;
 import driftingdroids.model.KeyDepthMapTrieGeneric;
 import driftingdroids.model.KeyDepthMapTrieSpecial;
 import driftingdroids.model.KeyMakerInt;
 import driftingdroids.model.KeyMakerLong;
+import driftingdroids.model.MultiGoalSolver;
 import driftingdroids.model.Solution;
 import driftingdroids.model.Solver;
 import driftingdroids.model.SolverIDDFS;
+import driftingdroids.model.Tablebase;
+import driftingdroids.server.SolverServer;
 
 
 
 
 public class Starter {
     
-    public static void main(String[] args) throws InterruptedException, InvocationTargetException {
+    public static void main(String[] args) throws InterruptedException, InvocationTargetException, IOException {
+        if ((args.length > 0) && "-server".equals(args[0])) {
+            //headless mode: HTTP solver server (optional args: port workers queueCapacity timeoutMillis)
+            SolverServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         new SwingGUI("DriftingDroids 1.3.10 (2022-08-22)");
 //        runTestRandom1000();
 //        runTestKeyDepthMap();
+//        runTestKeyDepthMapHash();
 //        runTestKeyInt();
 //        runTestKeyLong();
+//        runTestTablebase();
+//        runTestMultiGoal();
     }
     
     
@@ -84,6 +100,8 @@ public class Starter {
         final long seconds = (new Date().getTime() - startDate.getTime() + 500) / 1000;
         System.out.println("finished.  runTime: " + seconds + " seconds  (" +
                 ((double)numGames / seconds) + " games per second)");
+        System.out.println("KeyDepthMapChunkPool: allocated=" + KeyDepthMapChunkPool.getNumAllocated() +
+                "  reused=" + KeyDepthMapChunkPool.getNumReused());
     }
     
     @SuppressWarnings("unused")
@@ -135,6 +153,44 @@ public class Starter {
         }
     }
 
+    
+    
+    @SuppressWarnings("unused")
+    private static void runTestKeyDepthMapHash() throws InterruptedException {
+        //large boards with 12-bit positions: the tries have many mostly empty nodes
+        final Board board = Board.createBoardFreestyle(Board.createBoardRandom(5), 64, 64, 5);
+        
+        System.err.println("GameID\t#Sol\t#Mov\tmsSpcl\tmsHash\tMBspcl\tMBhash");
+        for(;;) {
+            board.setRobotsRandom();
+            board.setGoalRandom();
+            final StringBuilder sb = new StringBuilder();
+            sb.append(board.getGameID()).append('\t');
+            
+            KeyDepthMapFactory.setDefaultClass(KeyDepthMapTrieSpecial.class);
+            final SolverIDDFS solverSpecial = (SolverIDDFS)Solver.createInstance(board);
+            final List<Solution> solutionsSpecial = solverSpecial.execute();
+            
+            KeyDepthMapFactory.setDefaultClass(KeyDepthMapHash.class);
+            final SolverIDDFS solverHash = (SolverIDDFS)Solver.createInstance(board);
+            final List<Solution> solutionsHash = solverHash.execute();
+            
+            sb.append(solutionsSpecial.size()).append('\t');
+            sb.append(solutionsSpecial.get(0).size()).append('\t');
+            sb.append(solverSpecial.getSolutionMilliSeconds()).append('\t');
+            sb.append(solverHash.getSolutionMilliSeconds()).append('\t');
+            sb.append(solverSpecial.getSolutionMemoryMegabytes()).append('\t');
+            sb.append(solverHash.getSolutionMemoryMegabytes()).append('\t');
+            System.err.println(sb);
+            
+            if (!solutionsSpecial.equals(solutionsHash)) {
+                System.err.println("solutions are not equal!");
+                System.out.println("solutions are not equal!");
+                break;
+            }
+        }
+    }
+
 
     @SuppressWarnings("unused")
     private static void runTestKeyInt() throws InterruptedException {
@@ -236,4 +292,61 @@ public class Starter {
                     "\tkdm2.megabytes=" + ((kdm2.allocatedBytes() + (1 << 20) - 1) >> 20) );
         }
     }
+
+
+    @SuppressWarnings("unused")
+    private static void runTestTablebase() throws InterruptedException, IOException {
+        final Board board = Board.createBoardGameID("0765+42+2E21BD0F+93");
+        final File file = new File(System.getProperty("java.io.tmpdir"), "tablebase-" + board.getGameID() + ".bin");
+        final long startMillis = System.currentTimeMillis();
+        final Tablebase tablebase = Tablebase.create(board, file);
+        System.err.println("created " + file + " in " + (System.currentTimeMillis() - startMillis) + "ms  maxDepth=" + tablebase.getMaxDepth());
+        
+        //sequential scan: find the hardest puzzle
+        long maxIndex = -1;
+        int maxMoves = -1;
+        for (long index = 0;  index < tablebase.getNumIndexes();  ++index) {
+            final int moves = tablebase.getOptimalMoves(index);
+            if (moves > maxMoves) {
+                maxMoves = moves;
+                maxIndex = index;
+            }
+        }
+        System.err.println("hardest puzzle: moves=" + maxMoves + " robots=" + Arrays.toString(tablebase.getRobotPositions(maxIndex)));
+        
+        //compare with the solver. skip the special rule (isSolution01), the tablebase doesn't know it.
+        for (int i = 0;  i < 100;  ) {
+            board.setRobotsRandom();
+            if (true == board.isSolution01()) {
+                continue;
+            }
+            ++i;
+            final int moves = tablebase.getOptimalMoves(board.getRobotPositions());
+            final int movesSolver = Solver.createInstance(board).execute().get(0).size();
+            System.err.println(board.getGameID() + "\t" + moves + "\t" + movesSolver + (moves == movesSolver ? "" : "\tnot equal!"));
+        }
+    }
+
+
+    @SuppressWarnings("unused")
+    private static void runTestMultiGoal() throws InterruptedException {
+        final Board board = Board.createBoardGameID("0765+42+2E21BD0F+93");
+        for (int i = 0;  i < 20;  ++i) {
+            board.setRobotsRandom();
+            final MultiGoalSolver multiGoalSolver = new MultiGoalSolver(board);
+            final Map<Board.Goal, List<Solution>> results = multiGoalSolver.execute();
+            long millisSolver = 0;
+            for (Map.Entry<Board.Goal, List<Solution>> entry : results.entrySet()) {
+                final Board goalBoard = Board.createClone(board);
+                goalBoard.setGoal(entry.getKey().position);
+                final Solver solver = Solver.createInstance(goalBoard);
+                final int moves = solver.execute().get(0).size();
+                millisSolver += solver.getSolutionMilliSeconds();
+                if (moves != entry.getValue().get(0).size()) {
+                    System.err.println(goalBoard.getGameID() + "\t" + entry.getValue().get(0).size() + "\t" + moves + "\tnot equal!");
+                }
+            }
+            System.err.println(board.getGameID() + "\tgoals=" + results.size() + "\tmsMultiGoal=" + multiGoalSolver.getSolutionMilliSeconds() + "\tmsSolver=" + millisSolver);
+        }
+    }
 }